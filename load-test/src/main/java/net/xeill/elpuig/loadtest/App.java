@@ -0,0 +1,26 @@
+package net.xeill.elpuig.loadtest;
+
+import java.util.List;
+
+// Una aplicació del repositori (un mòdul de Maven) i els endpoints que se li proven
+record App(String name, String module, List<Endpoint> endpoints, boolean needsUpstream) {
+
+    record Endpoint(String name, String path) {
+    }
+
+    // Les aplicacions del repositori. /quote fa servir l'API falsa en lloc de chucknorris.io
+    static List<App> all() {
+        return List.of(
+                new App("webservice-basics", "springboot-restful-webservice-basics", List.of(
+                        new Endpoint("users-list", "/api/v0/users"),
+                        new Endpoint("users-get", "/api/v0/users/1"),
+                        new Endpoint("greeting-rest", "/greeting?name=World")), false),
+                new App("restcontroller-vs-controller", "springboot-restcontroller-vs-controller", List.of(
+                        new Endpoint("greeting-mvc", "/greeting?name=World")), false),
+                new App("crud-intro", "springboot-crud-intro", List.of(
+                        new Endpoint("hello", "/hello?name=World"),
+                        new Endpoint("hello-bye", "/hello/bye?name=World")), false),
+                new App("consuming-api", "springboot-restful-consuming-api", List.of(
+                        new Endpoint("quote", "/quote")), true));
+    }
+}
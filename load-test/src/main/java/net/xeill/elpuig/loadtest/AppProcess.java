@@ -0,0 +1,136 @@
+package net.xeill.elpuig.loadtest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Arrenca el jar d'una aplicació en un procés a part, en un port lliure, i espera que respongui
+final class AppProcess implements AutoCloseable {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+
+    private final Process process;
+    private final int port;
+    private final Path log;
+    // Moment (System.nanoTime) just abans de llançar el procés
+    private final long launchedAt;
+
+    private AppProcess(Process process, int port, Path log, long launchedAt) {
+        this.process = process;
+        this.port = port;
+        this.log = log;
+        this.launchedAt = launchedAt;
+    }
+
+    static AppProcess start(App app, Path root, String java, List<String> extraArgs, Path logDir) throws IOException, InterruptedException {
+        Path jar = findJar(root.resolve(app.module()).resolve("target"), app.module());
+        AppProcess started = launch(app, java, List.of("-jar", jar.toString()), extraArgs, logDir.resolve(app.name() + ".log"));
+        started.awaitReady(app.endpoints().get(0).path());
+        return started;
+    }
+
+    // Llança l'aplicació en un port lliure sense esperar que respongui.
+    // jvm: opcions de la JVM i el jar ("-jar", ...); extraArgs: arguments de Spring
+    static AppProcess launch(App app, String java, List<String> jvm, List<String> extraArgs, Path log) throws IOException {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(jvm);
+        command.addAll(List.of("--server.port=" + port, "--spring.main.banner-mode=off", "--logging.level.root=WARN"));
+        command.addAll(extraArgs);
+        Files.createDirectories(log.getParent());
+        long launchedAt = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        return new AppProcess(process, port, log, launchedAt);
+    }
+
+    int port() {
+        return port;
+    }
+
+    // Espera fins que el primer endpoint respon (amb qualsevol codi HTTP)
+    private void awaitReady(String path) throws InterruptedException, IOException {
+        await(path, false, 250);
+    }
+
+    // Espera fins que l'endpoint respon 200 (preguntant cada 10 ms) i retorna el temps des que es va llançar el procés
+    long awaitFirstSuccess(String path) throws InterruptedException, IOException {
+        await(path, true, 10);
+        return System.nanoTime() - launchedAt;
+    }
+
+    private void await(String path, boolean success, long pollMs) throws InterruptedException, IOException {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+                .timeout(Duration.ofSeconds(10)).build();
+        long deadline = launchedAt + STARTUP_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("The application exited during startup, see " + log);
+            }
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                if (!success || response.statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Encara no escolta
+            }
+            Thread.sleep(pollMs);
+        }
+        close();
+        throw new IOException("The application did not start within " + STARTUP_TIMEOUT + ", see " + log);
+    }
+
+    // Memòria resident del procés (VmRSS de /proc/<pid>/status) en kB, o -1 si no es pot llegir (fora de Linux)
+    long rssKb() {
+        try (Stream<String> lines = Files.lines(Path.of("/proc", Long.toString(process.pid()), "status"))) {
+            return lines.filter(l -> l.startsWith("VmRSS:"))
+                    .mapToLong(l -> Long.parseLong(l.replaceAll("[^0-9]", "")))
+                    .findFirst().orElse(-1);
+        } catch (IOException | UncheckedIOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    // El jar que genera "./mvnw package" al directori target del mòdul (o a target/fast-start)
+    static Path findJar(Path dir, String module) throws IOException {
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.list(dir)) {
+                Path jar = files.filter(f -> f.getFileName().toString().endsWith(".jar")).findFirst().orElse(null);
+                if (jar != null) {
+                    return jar;
+                }
+            }
+        }
+        throw new IOException("No jar in " + dir + ": run ./mvnw package -DskipTests in " + module);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package net.xeill.elpuig.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Prova de càrrega de punta a punta: arrenca cada aplicació del repositori (el seu jar) en un port lliure,
+// envia peticions a un ritme fix a cada endpoint i mostra el throughput i la latència p50/p99/p99.9.
+// Per a /quote arrenca també una API d'acudits falsa (StubUpstream) i hi apunta l'aplicació.
+//
+// Opcions (--nom=valor):
+//   --rate=200              peticions per segon a cada endpoint
+//   --duration=20           segons de mesura per endpoint
+//   --warmup=5              segons d'escalfament abans de mesurar (no es compten)
+//   --connections=256       peticions (i connexions) obertes alhora com a màxim
+//   --apps=a,b              només aquestes aplicacions (webservice-basics, restcontroller-vs-controller, crud-intro, consuming-api)
+//   --endpoints=a,b         només aquests endpoints (users-list, users-get, greeting-rest, greeting-mvc, hello, hello-bye, quote)
+//   --upstream-delay-ms=50  retard de l'API d'acudits falsa
+//   --profiles=virtual      perfils de Spring amb què s'arrenquen les aplicacions
+//   --java=/path/to/java    JVM per a les aplicacions (per defecte la mateixa que la prova)
+//   --root=..               directori del repositori
+//   --out=target/load-results
+public class LoadTest {
+
+    record Measured(App app, App.Endpoint endpoint, int rate, OpenLoopLoad.Result result) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        int rate = options.getInt("rate", 200);
+        Duration duration = Duration.ofSeconds(options.getLong("duration", 20));
+        Duration warmup = Duration.ofSeconds(options.getLong("warmup", 5));
+        int connections = options.getInt("connections", 256);
+        int upstreamDelayMs = options.getInt("upstream-delay-ms", 50);
+        Set<String> apps = options.list("apps");
+        Set<String> endpoints = options.list("endpoints");
+        String java = options.java();
+        Path root = options.root();
+        Path out = options.out("target/load-results");
+
+        List<String> appArgs = new ArrayList<>();
+        if (options.get("profiles") != null) {
+            appArgs.add("--spring.profiles.active=" + options.get("profiles"));
+        }
+
+        System.out.printf("rate=%d/s duration=%ss warmup=%ss connections=%d java=%s%n",
+                rate, duration.toSeconds(), warmup.toSeconds(), connections, java);
+        List<Measured> results = new ArrayList<>();
+        OpenLoopLoad load = new OpenLoopLoad(connections);
+        try (StubUpstream upstream = new StubUpstream(upstreamDelayMs)) {
+            for (App app : App.all()) {
+                if (!apps.isEmpty() && !apps.contains(app.name())) {
+                    continue;
+                }
+                List<App.Endpoint> selected = app.endpoints().stream()
+                        .filter(e -> endpoints.isEmpty() || endpoints.contains(e.name()))
+                        .toList();
+                if (selected.isEmpty()) {
+                    continue;
+                }
+                List<String> launchArgs = new ArrayList<>(appArgs);
+                if (app.needsUpstream()) {
+                    launchArgs.add("--quotes.upstream-url=" + upstream.url());
+                }
+                System.out.printf("%nStarting %s...%n", app.name());
+                try (AppProcess process = AppProcess.start(app, root, java, launchArgs, out.resolve("logs"))) {
+                    for (App.Endpoint endpoint : selected) {
+                        URI uri = URI.create("http://127.0.0.1:" + process.port() + endpoint.path());
+                        load.run(uri, rate, warmup);
+                        OpenLoopLoad.Result result = load.run(uri, rate, duration);
+                        Measured measured = new Measured(app, endpoint, rate, result);
+                        results.add(measured);
+                        printRow(System.out, measured);
+                        try (PrintStream hgrm = new PrintStream(out.resolve(endpoint.name() + ".hgrm").toFile())) {
+                            // Distribució completa en mil·lisegons (es pot dibuixar amb l'HdrHistogram plotter)
+                            result.histogram().outputPercentileDistribution(hgrm, 1000.0);
+                        }
+                    }
+                }
+            }
+        }
+
+        Options.printTable(System.out, String.format("%-14s %8s %10s %9s %9s %9s %9s %7s",
+                "endpoint", "rate", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors"), results, LoadTest::printRow);
+        Options.writeJson(out, results, LoadTest::toJson);
+    }
+
+    private static void printRow(PrintStream out, Measured m) {
+        Histogram h = m.result().histogram();
+        out.printf(Locale.ROOT, "%-14s %8d %10.1f %9.2f %9.2f %9.2f %9.2f %7d%n",
+                m.endpoint().name(), m.rate(), m.result().throughput(),
+                ms(h, 50), ms(h, 99), ms(h, 99.9), h.getMaxValue() / 1000.0, m.result().errors());
+    }
+
+    private static double ms(Histogram h, double percentile) {
+        return h.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static String toJson(Measured m) {
+        Histogram h = m.result().histogram();
+        return String.format(Locale.ROOT,
+                "{\"app\":\"%s\",\"endpoint\":\"%s\",\"path\":\"%s\",\"rate\":%d,\"requests\":%d,\"errors\":%d,"
+                        + "\"throughput\":%.1f,\"p50_ms\":%.3f,\"p99_ms\":%.3f,\"p999_ms\":%.3f,\"max_ms\":%.3f}",
+                m.app().name(), m.endpoint().name(), m.endpoint().path(), m.rate(), h.getTotalCount(),
+                m.result().errors(), m.result().throughput(), ms(h, 50), ms(h, 99), ms(h, 99.9), h.getMaxValue() / 1000.0);
+    }
+}
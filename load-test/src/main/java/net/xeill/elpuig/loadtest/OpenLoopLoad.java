@@ -0,0 +1,83 @@
+package net.xeill.elpuig.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Càrrega de llaç obert: les peticions surten a un ritme fix (rate per segon), responguin o no les anteriors.
+// La latència de cada petició es compta des del moment en què TOCAVA enviar-la segons el calendari, no des
+// que s'ha enviat de veritat. Si el servidor (o el mateix generador) s'encalla, les peticions que s'haurien
+// d'haver enviat mentrestant compten tot el temps d'espera: així es corregeix l'omissió coordinada.
+final class OpenLoopLoad {
+
+    // Latències en microsegons, fins a 1 hora, amb 3 xifres significatives
+    private static final long HIGHEST_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    record Result(Histogram histogram, long errors, double seconds) {
+        double throughput() {
+            return histogram.getTotalCount() / seconds;
+        }
+    }
+
+    private final HttpClient client;
+    private final int maxInFlight;
+
+    OpenLoopLoad(int maxInFlight) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.maxInFlight = maxInFlight;
+    }
+
+    // Envia "rate" peticions per segon a "uri" durant "duration" i espera totes les respostes
+    Result run(URI uri, int rate, Duration duration) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+        Recorder recorder = new Recorder(HIGHEST_MICROS, 3);
+        AtomicLong errors = new AtomicLong();
+        // Com a màxim maxInFlight peticions (i connexions) obertes alhora. Si s'hi arriba, el generador espera,
+        // però com que la latència es compta des de l'hora prevista, aquesta espera també es mesura
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long period = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        AtomicLong lastCompletion = new AtomicLong(start);
+
+        for (long i = 0; ; i++) {
+            long intended = start + i * period;
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            inFlight.acquire();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                long now = System.nanoTime();
+                if (error != null || response.statusCode() >= 400) {
+                    errors.incrementAndGet();
+                } else {
+                    recorder.recordValue(Math.min(HIGHEST_MICROS, TimeUnit.NANOSECONDS.toMicros(now - intended)));
+                }
+                lastCompletion.accumulateAndGet(now, Math::max);
+                inFlight.release();
+            });
+        }
+        // Esperem les peticions que encara no han acabat
+        if (!inFlight.tryAcquire(maxInFlight, 60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Requests still in flight after 60 s");
+        }
+        double seconds = (lastCompletion.get() - start) / 1e9;
+        return new Result(recorder.getIntervalHistogram(), errors.get(), seconds);
+    }
+}
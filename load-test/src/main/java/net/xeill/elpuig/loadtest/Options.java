@@ -0,0 +1,102 @@
+package net.xeill.elpuig.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Opcions --nom=valor de LoadTest i StartupBenchmark, i la sortida que tenen en comú:
+// la taula de resum i el fitxer results.json (un objecte JSON per resultat)
+final class Options {
+
+    private final Map<String, String> values;
+
+    private Options(Map<String, String> values) {
+        this.values = values;
+    }
+
+    static Options parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            int eq = arg.indexOf('=');
+            values.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return new Options(values);
+    }
+
+    // El valor de l'opció, o null si no s'ha donat
+    String get(String name) {
+        return values.get(name);
+    }
+
+    String get(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    int getInt(String name, int defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    long getLong(String name, long defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    // Una llista separada per comes (--apps=a,b); buida si no s'ha donat
+    Set<String> list(String name) {
+        String value = values.get(name);
+        return value == null || value.isBlank() ? Set.of() : Set.of(value.split(","));
+    }
+
+    // --java, per defecte la mateixa JVM que executa la prova
+    String java() {
+        return get("java", ProcessHandle.current().info().command().orElse("java"));
+    }
+
+    // --root, el directori del repositori
+    Path root() {
+        return Paths.get(get("root", defaultRoot())).toAbsolutePath().normalize();
+    }
+
+    // --out, el directori dels resultats (es crea si no hi és)
+    Path out(String defaultValue) throws IOException {
+        Path out = Paths.get(get("out", defaultValue));
+        Files.createDirectories(out);
+        return out;
+    }
+
+    // Si s'executa des del directori load-test, el repositori és el directori pare
+    private static String defaultRoot() {
+        Path cwd = Paths.get("").toAbsolutePath();
+        return cwd.getFileName() != null && cwd.getFileName().toString().equals("load-test") ? ".." : ".";
+    }
+
+    // La taula de resum al final de la prova: la capçalera i una fila per resultat
+    static <T> void printTable(PrintStream out, String header, List<T> results, BiConsumer<PrintStream, T> printRow) {
+        out.printf("%n%s%n", header);
+        results.forEach(r -> printRow.accept(out, r));
+    }
+
+    // Escriu out/results.json: un array amb l'objecte JSON de cada resultat, un per línia
+    static <T> void writeJson(Path out, List<T> results, Function<T, String> toJson) throws IOException {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            json.append("  ").append(toJson.apply(results.get(i)));
+            json.append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        Path file = out.resolve("results.json");
+        Files.writeString(file, json.append("]\n").toString());
+        System.out.println("\nResults written to " + file.toAbsolutePath());
+    }
+}
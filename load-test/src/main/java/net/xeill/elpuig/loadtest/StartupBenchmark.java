@@ -0,0 +1,135 @@
+package net.xeill.elpuig.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Prova d'arrencada: arrenca cada aplicació diverses vegades amb el build normal i amb el del perfil de Maven
+// fast-start (AOT + arxiu CDS + inicialització lazy) i mesura:
+//   - el temps fins a la primera resposta 200 del primer endpoint (des que es llança el procés)
+//   - la memòria resident (RSS) del procés just després d'aquesta primera resposta
+// Es mostra la mediana (i el mínim del temps) de cada variant.
+//
+// Opcions (--nom=valor):
+//   --runs=5                arrencades de cada variant de cada aplicació
+//   --apps=a,b              només aquestes aplicacions (webservice-basics, restcontroller-vs-controller, crud-intro, consuming-api)
+//   --upstream-delay-ms=50  retard de l'API d'acudits falsa (per a consuming-api)
+//   --java=/path/to/java    JVM per a les aplicacions (ha de ser la mateixa que ha creat l'arxiu CDS)
+//   --root=..               directori del repositori
+//   --out=target/startup-results
+public class StartupBenchmark {
+
+    // Una manera d'arrencar l'aplicació
+    enum Variant { DEFAULT, FAST_START }
+
+    record Measured(App app, Variant variant, long[] startupMs, long[] rssKb) {
+
+        long medianMs() {
+            return median(startupMs);
+        }
+
+        long minMs() {
+            return Arrays.stream(startupMs).min().orElse(0);
+        }
+
+        long medianRssKb() {
+            return median(rssKb);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        int runs = options.getInt("runs", 5);
+        int upstreamDelayMs = options.getInt("upstream-delay-ms", 50);
+        Set<String> apps = options.list("apps");
+        String java = options.java();
+        Path root = options.root();
+        Path out = options.out("target/startup-results");
+
+        System.out.printf("runs=%d java=%s%n", runs, java);
+        List<Measured> results = new ArrayList<>();
+        try (StubUpstream upstream = new StubUpstream(upstreamDelayMs)) {
+            for (App app : App.all()) {
+                if (!apps.isEmpty() && !apps.contains(app.name())) {
+                    continue;
+                }
+                List<String> appArgs = new ArrayList<>();
+                if (app.needsUpstream()) {
+                    appArgs.add("--quotes.upstream-url=" + upstream.url());
+                }
+                for (Variant variant : Variant.values()) {
+                    List<String> jvm = jvmArgs(app, root, variant);
+                    if (jvm == null) {
+                        continue;
+                    }
+                    List<String> springArgs = new ArrayList<>(appArgs);
+                    if (variant == Variant.FAST_START) {
+                        springArgs.add("--spring.profiles.active=fast-start");
+                    }
+                    System.out.printf("%nStarting %s (%s) %d times...%n", app.name(), name(variant), runs);
+                    long[] startupMs = new long[runs];
+                    long[] rssKb = new long[runs];
+                    for (int run = 0; run < runs; run++) {
+                        Path log = out.resolve("logs").resolve(app.name() + "-" + name(variant) + ".log");
+                        try (AppProcess process = AppProcess.launch(app, java, jvm, springArgs, log)) {
+                            startupMs[run] = process.awaitFirstSuccess(app.endpoints().get(0).path()) / 1_000_000;
+                            rssKb[run] = process.rssKb();
+                        }
+                        System.out.printf("  run %d: %d ms, %d MB%n", run + 1, startupMs[run], rssKb[run] / 1024);
+                    }
+                    results.add(new Measured(app, variant, startupMs, rssKb));
+                }
+            }
+        }
+
+        Options.printTable(System.out, String.format("%-30s %-11s %10s %10s %10s", "app", "variant", "median ms", "min ms", "RSS MB"),
+                results, StartupBenchmark::printRow);
+        Options.writeJson(out, results, StartupBenchmark::toJson);
+    }
+
+    // Opcions de la JVM de cada variant, o null si aquesta variant no està construïda
+    private static List<String> jvmArgs(App app, Path root, Variant variant) throws IOException {
+        Path target = root.resolve(app.module()).resolve("target");
+        if (variant == Variant.DEFAULT) {
+            return List.of("-jar", AppProcess.findJar(target, app.module()).toString());
+        }
+        Path dir = target.resolve("fast-start");
+        Path archive = dir.resolve("application.jsa");
+        if (!Files.exists(archive)) {
+            System.out.printf("%nSkipping %s (fast-start): no %s, run ./mvnw -Pfast-start package -DskipTests in %s%n",
+                    app.name(), archive, app.module());
+            return null;
+        }
+        return List.of("-XX:SharedArchiveFile=" + archive, "-Dspring.aot.enabled=true",
+                "-jar", AppProcess.findJar(dir, app.module()).toString());
+    }
+
+    private static String name(Variant variant) {
+        return variant.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    private static void printRow(PrintStream out, Measured m) {
+        out.printf(Locale.ROOT, "%-30s %-11s %10d %10d %10.1f%n",
+                m.app().name(), name(m.variant()), m.medianMs(), m.minMs(), m.medianRssKb() / 1024.0);
+    }
+
+    private static String toJson(Measured m) {
+        return String.format(Locale.ROOT,
+                "{\"app\":\"%s\",\"variant\":\"%s\",\"runs\":%d,\"median_ms\":%d,\"min_ms\":%d,\"median_rss_kb\":%d,"
+                        + "\"startup_ms\":%s,\"rss_kb\":%s}",
+                m.app().name(), name(m.variant()), m.startupMs().length, m.medianMs(), m.minMs(), m.medianRssKb(),
+                Arrays.toString(m.startupMs()).replace(" ", ""), Arrays.toString(m.rssKb()).replace(" ", ""));
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,51 @@
+package net.xeill.elpuig.loadtest;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// API d'acudits falsa per a /quote: respon com https://api.chucknorris.io/jokes/random
+// després d'un retard fix, perquè els resultats no depenguin de la xarxa ni de l'API real
+final class StubUpstream implements AutoCloseable {
+
+    private static final byte[] QUOTE = ("{\"categories\":[],\"created_at\":\"2020-01-05 13:42:25.099703\","
+            + "\"icon_url\":\"https://api.chucknorris.io/img/avatar/chuck-norris.png\",\"id\":\"5uHPfGrnSiqjgYUwz-DAog\","
+            + "\"updated_at\":\"2020-01-05 13:42:25.099703\",\"url\":\"https://api.chucknorris.io/jokes/5uHPfGrnSiqjgYUwz-DAog\","
+            + "\"value\":\"Chuck Norris can load test production without a load balancer.\"}").getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    StubUpstream(int delayMs) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.createContext("/jokes/random", exchange -> {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, QUOTE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(QUOTE);
+            }
+        });
+        server.setExecutor(threads);
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/jokes/random";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        threads.shutdownNow();
+    }
+}
@@ -0,0 +1,116 @@
+package net.xeill.elpuig.shared.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Límit global de peticions en curs que s'ajusta segons la latència observada (a l'estil de Gradient2).
+// Mentre la latència es manté a prop de la seva mitjana a llarg termini el límit va pujant; quan puja
+// (les peticions fan cua en algun lloc: CPU, pool de hash, API externa...) el límit baixa en proporció.
+// Així les peticions de més es rebutgen de seguida en lloc d'esperar en una cua i fer-les lentes totes.
+//
+// tryAcquire i release només fan operacions atòmiques (sense locks). Cada window-ms, la primera petició
+// que acaba calcula el límit nou amb les latències d'aquella finestra.
+public final class AdaptiveConcurrencyLimiter {
+
+    // Finestres amb menys mostres no canvien el límit
+    private static final int MIN_SAMPLES = 10;
+    // Pes de cada finestra a la mitjana a llarg termini
+    private static final double LONG_RTT_WEIGHT = 0.05;
+    // Quant es mou el límit cap al valor calculat a cada finestra
+    private static final double SMOOTHING = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final long windowNanos;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile int limit;
+    // Màxim de peticions en curs dins de la finestra actual
+    private final AtomicInteger peak = new AtomicInteger();
+
+    private final LongAdder rttSum = new LongAdder();
+    private final LongAdder rttCount = new LongAdder();
+    private final AtomicLong windowEnd;
+    // Mitjana mòbil de la latència de les finestres (0 = encara no n'hi ha cap). Només l'escriu update
+    private volatile double longRtt;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, long windowMillis) {
+        if (minLimit < 1 || maxLimit < minLimit || tolerance < 1 || windowMillis < 1) {
+            throw new IllegalArgumentException("Expected 1 <= min-limit <= max-limit, tolerance >= 1 and window-ms > 0");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.windowEnd = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    // true si la petició pot passar; llavors s'ha de cridar release quan acabi
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                if (current + 1 > peak.get()) {
+                    peak.accumulateAndGet(current + 1, Math::max);
+                }
+                return true;
+            }
+        }
+    }
+
+    // La petició que havia començat a startNanos (System.nanoTime) ha acabat
+    public void release(long startNanos) {
+        inflight.decrementAndGet();
+        long now = System.nanoTime();
+        rttSum.add(now - startNanos);
+        rttCount.increment();
+        long end = windowEnd.get();
+        if (now - end >= 0 && windowEnd.compareAndSet(end, now + windowNanos)) {
+            update();
+        }
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int inflight() {
+        return inflight.get();
+    }
+
+    // Només hi entra un fil per finestra (el que guanya el compareAndSet de windowEnd)
+    private void update() {
+        long count = rttCount.sumThenReset();
+        long sum = rttSum.sumThenReset();
+        int busiest = peak.getAndSet(inflight.get());
+        if (count < MIN_SAMPLES) {
+            return;
+        }
+        double shortRtt = (double) sum / count;
+        double previous = longRtt;
+        double average = previous == 0 ? shortRtt : previous * (1 - LONG_RTT_WEIGHT) + shortRtt * LONG_RTT_WEIGHT;
+        // Si la latència ha baixat molt (ha passat un pic de càrrega), la mitjana l'atrapa més de pressa
+        if (average > 2 * shortRtt) {
+            average = (average + shortRtt) / 2;
+        }
+        longRtt = average;
+
+        int current = limit;
+        // Si no s'ha arribat ni a la meitat del límit, la latència no diu res de si el límit és massa alt
+        if (busiest < current / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * average / shortRtt));
+        // sqrt(limit): marge perquè el límit pugui créixer mentre la latència no empitjora
+        double target = current * gradient + Math.sqrt(current);
+        double next = current * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = (int) Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
@@ -0,0 +1,157 @@
+package net.xeill.elpuig.shared.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Control d'admissió davant dels endpoints. És fora del component scan dels mòduls: cada mòdul el crea al seu
+// AdmissionFilterConfig (@Import(AdmissionFilter.class)) i el registra amb un FilterRegistrationBean només a les URL
+// de admission.url-patterns (si no, s'aplicaria a totes, també a /actuator). L'ordre és HIGHEST_PRECEDENCE + 2,
+// just després del filtre de mètriques de Spring (ServerHttpObservationFilter, HIGHEST_PRECEDENCE + 1):
+// les peticions rebutjades surten a http.server.requests amb el seu status (429/503), però no passen per cap altre filtre.
+// Abans d'arribar al controlador, cada petició ha de passar:
+//   1. el límit del seu client (TokenBucketLimiter): si el supera, 429 amb Retry-After = quan tindrà lloc
+//   2. el límit global de peticions en curs (AdaptiveConcurrencyLimiter): si és ple, 503 amb Retry-After: 1
+// Les peticions rebutjades no arriben a fer feina (ni hash de contrasenya, ni crides a l'API externa...)
+// i es responen sense cos, en microsegons.
+//
+// Les peticions asíncrones (CompletableFuture, StreamingResponseBody...) ocupen lloc fins que acaben de debò,
+// no fins que el fil de Tomcat queda lliure. Per això les connexions llargues (un SSE, un NDJSON de tots els
+// usuaris...) han d'anar a admission.excluded-paths: ocuparien una plaça durant minuts i la seva durada,
+// comptada com a latència, faria baixar el límit de totes les altres.
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private final boolean enabled;
+    // null si no hi ha límit per client (admission.rate.per-second=0)
+    private final TokenBucketLimiter rateLimiter;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final String clientHeader;
+    private final Set<String> excludedPaths;
+    private final Counter rateRejected;
+    private final Counter concurrencyRejected;
+
+    public AdmissionFilter(MeterRegistry registry,
+                           @Value("${admission.enabled:true}") boolean enabled,
+                           @Value("${admission.excluded-paths:}") Set<String> excludedPaths,
+                           @Value("${admission.client-header:}") String clientHeader,
+                           @Value("${admission.rate.per-second:1000}") double perSecond,
+                           @Value("${admission.rate.burst:2000}") int burst,
+                           @Value("${admission.rate.slots:16384}") int slots,
+                           @Value("${admission.concurrency.initial-limit:100}") int initialLimit,
+                           @Value("${admission.concurrency.min-limit:10}") int minLimit,
+                           @Value("${admission.concurrency.max-limit:1000}") int maxLimit,
+                           @Value("${admission.concurrency.tolerance:1.5}") double tolerance,
+                           @Value("${admission.concurrency.window-ms:1000}") long windowMillis) {
+        this.enabled = enabled;
+        this.excludedPaths = excludedPaths;
+        this.clientHeader = clientHeader.isBlank() ? null : clientHeader.strip();
+        this.rateLimiter = perSecond > 0 ? new TokenBucketLimiter(perSecond, burst, slots) : null;
+        this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, tolerance, windowMillis);
+        this.rateRejected = Counter.builder("admission.rejected").tag("reason", "rate")
+                .description("Requests rejected by admission control").register(registry);
+        this.concurrencyRejected = Counter.builder("admission.rejected").tag("reason", "concurrency")
+                .description("Requests rejected by admission control").register(registry);
+        Gauge.builder("admission.concurrency.limit", concurrencyLimiter, AdaptiveConcurrencyLimiter::limit)
+                .description("Current adaptive concurrency limit").register(registry);
+        Gauge.builder("admission.concurrency.inflight", concurrencyLimiter, AdaptiveConcurrencyLimiter::inflight)
+                .description("Admitted requests still in progress").register(registry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || (!excludedPaths.isEmpty() && excludedPaths.contains(request.getRequestURI()));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (rateLimiter != null) {
+            long waitNanos = rateLimiter.tryAcquire(client(request));
+            if (waitNanos > 0) {
+                rateRejected.increment();
+                reject(response, HttpStatus.TOO_MANY_REQUESTS, waitNanos);
+                return;
+            }
+        }
+        if (!concurrencyLimiter.tryAcquire()) {
+            concurrencyRejected.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1));
+            return;
+        }
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                // onComplete arriba sempre, també després d'un error o un timeout
+                request.getAsyncContext().addListener(new ReleaseOnComplete(start));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                concurrencyLimiter.release(start);
+            }
+        }
+    }
+
+    // El client és el valor de admission.client-header (el primer, si és una llista com X-Forwarded-For)
+    // o, si no n'hi ha, l'adreça IP de la connexió
+    private String client(HttpServletRequest request) {
+        if (clientHeader != null) {
+            String value = request.getHeader(clientHeader);
+            if (value != null && !value.isBlank()) {
+                int comma = value.indexOf(',');
+                return (comma < 0 ? value : value.substring(0, comma)).strip();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long waitNanos) {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, (waitNanos + 999_999_999) / 1_000_000_000)));
+        response.setContentLength(0);
+    }
+
+    private final class ReleaseOnComplete implements AsyncListener {
+
+        private final long start;
+
+        ReleaseOnComplete(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            concurrencyLimiter.release(start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Si es torna a començar una part asíncrona, el listener s'ha de tornar a afegir
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
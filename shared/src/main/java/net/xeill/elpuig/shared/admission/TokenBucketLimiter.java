@@ -0,0 +1,96 @@
+package net.xeill.elpuig.shared.admission;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Límit de peticions per client (token bucket) sense locks.
+// Cada client té un bucket de "burst" peticions que es reomple a "perSecond" peticions per segon.
+// Està implementat com a GCRA: l'estat del bucket és un sol long, l'instant en què tornaria a estar ple (TAT).
+// Una petició a l'instant now fa TAT = max(TAT, now) + interval; si el TAT nou queda més enllà de
+// now + burst intervals, el bucket és buit i es rebutja. Actualitzar-lo és un sol compareAndSet.
+//
+// Els buckets són en una taula fixa (slots posicions) indexada pel hash del client: no es crea cap objecte
+// per client i la memòria no creix amb el nombre de clients. Dos clients que cauen a la mateixa posició
+// comparteixen límit, cosa rara si slots és molt més gran que els clients actius.
+// Cada posició ocupa una línia de cache sencera perquè els fils de clients diferents no es molestin (false sharing).
+public final class TokenBucketLimiter {
+
+    // 8 longs = 64 bytes, una línia de cache
+    private static final int PAD = 8;
+
+    private final AtomicLongArray tat;
+    private final int mask;
+    private final long intervalNanos;
+    private final long capacityNanos;
+    // Llavor aleatòria de cada instància per al hash de les claus: sense conèixer-la, des de fora no es poden
+    // triar claus que caiguin a la mateixa posició
+    private final long seed = ThreadLocalRandom.current().nextLong();
+    // Els temps es compten des d'aquí perquè mai siguin negatius (TAT 0 = bucket ple)
+    private final long origin = System.nanoTime();
+
+    public TokenBucketLimiter(double perSecond, int burst, int slots) {
+        if (perSecond <= 0 || burst < 1 || slots < 1) {
+            throw new IllegalArgumentException("perSecond, burst and slots must be positive");
+        }
+        int size = Integer.highestOneBit(Math.min(slots, 1 << 24));
+        if (size < slots) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.tat = new AtomicLongArray(size * PAD);
+        this.intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / perSecond));
+        this.capacityNanos = intervalNanos * burst;
+    }
+
+    // Consumeix una petició del bucket del client. Retorna 0 si es pot atendre,
+    // o quants nanosegons ha d'esperar el client abans de tornar-ho a provar
+    public long tryAcquire(String client) {
+        int index = index(client);
+        long now = System.nanoTime() - origin;
+        while (true) {
+            long current = tat.get(index);
+            long next = Math.max(current, now) + intervalNanos;
+            long excess = next - now - capacityNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (tat.compareAndSet(index, current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private int index(String client) {
+        return ((int) hash(client) & mask) * PAD;
+    }
+
+    // Hash de 64 bits dels caràcters de la clau (4 caràcters de 16 bits per pas) amb la llavor de la instància,
+    // com a GreetingSketch. No es parteix de String.hashCode: claus amb el mateix hashCode ("Aa" i "BB")
+    // hi caurien sempre juntes, fos quina fos la llavor
+    private long hash(String client) {
+        int length = client.length();
+        long h = seed ^ (length * 0x9E3779B97F4A7C15L);
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long block = (long) client.charAt(i) | (long) client.charAt(i + 1) << 16
+                    | (long) client.charAt(i + 2) << 32 | (long) client.charAt(i + 3) << 48;
+            h = mix(h ^ block);
+        }
+        if (i < length) {
+            long block = 0;
+            for (int shift = 0; i < length; i++, shift += 16) {
+                block |= (long) client.charAt(i) << shift;
+            }
+            h = mix(h ^ block);
+        }
+        return h;
+    }
+
+    // Finalitzador de SplitMix64
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
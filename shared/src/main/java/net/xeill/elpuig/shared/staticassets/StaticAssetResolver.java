@@ -0,0 +1,163 @@
+package net.xeill.elpuig.shared.staticassets;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.HttpResource;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+// Fa servir les còpies amb hash al nom que genera StaticAssetsBuilder en el build (static-assets.properties):
+//   - URL: ResourceUrlProvider (i ResourceUrlEncodingFilter a les plantilles, si l'aplicació el registra)
+//     converteix /assets/styles.css en /assets/styles-<hash>.css. index.html és la URL d'entrada i no en té
+//   - Respostes: una còpia amb hash no canvia mai, així que porta Cache-Control: immutable d'un any.
+//     La resta (index.html, URL sense hash) es torna a validar cada vegada (Last-Modified -> 304).
+//   - Cada fitxer (i cada variant comprimida que tria EncodedResourceResolver) es llegeix del jar un sol cop
+//     i es guarda a memòria: cada resposta és una sola escriptura dels bytes ja comprimits, sense tornar-los a
+//     llegir ni a comprimir. Els fitxers de més de maxMemoryBytes es llegeixen del jar a cada petició.
+// Va just després de CachingResourceResolver, que guarda el resultat per camí i codificació.
+public class StaticAssetResolver extends AbstractResourceResolver {
+
+    public static final String MANIFEST = "static-assets.properties";
+    static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    // Camí al classpath de l'original -> camí de la còpia amb hash
+    private final Map<String, String> fingerprints;
+    private final Set<String> copies;
+    private final int maxMemoryBytes;
+
+    public StaticAssetResolver(Map<String, String> fingerprints, int maxMemoryBytes) {
+        this.fingerprints = Map.copyOf(fingerprints);
+        this.copies = Set.copyOf(fingerprints.values());
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    // Llegeix static-assets.properties del classpath. Si no hi és (l'aplicació no s'ha construït amb Maven),
+    // no hi ha còpies amb hash i tot es serveix amb el nom original
+    public static StaticAssetResolver fromManifest(int maxMemoryBytes) {
+        Map<String, String> fingerprints = new HashMap<>();
+        ClassPathResource manifest = new ClassPathResource(MANIFEST);
+        if (manifest.exists()) {
+            Properties properties = new Properties();
+            try (InputStream in = manifest.getInputStream()) {
+                properties.load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read " + MANIFEST, e);
+            }
+            properties.forEach((file, copy) -> fingerprints.put((String) file, (String) copy));
+        }
+        return new StaticAssetResolver(fingerprints, maxMemoryBytes);
+    }
+
+    @Override
+    protected Resource resolveResourceInternal(HttpServletRequest request, String requestPath,
+                                               List<? extends Resource> locations, ResourceResolverChain chain) {
+        Resource resource = chain.resolveResource(request, requestPath, locations);
+        if (resource == null) {
+            return null;
+        }
+        boolean immutable = locations.stream().anyMatch(location -> copies.contains(classpath(location, requestPath)));
+        try {
+            return new StaticAsset(resource, immutable, maxMemoryBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + resource.getDescription(), e);
+        }
+    }
+
+    @Override
+    protected String resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations,
+                                            ResourceResolverChain chain) {
+        String path = chain.resolveUrlPath(resourceUrlPath, locations);
+        if (path == null) {
+            return null;
+        }
+        for (Resource location : locations) {
+            String copy = fingerprints.get(classpath(location, path));
+            if (copy != null) {
+                return path.substring(0, path.lastIndexOf('/') + 1) + copy.substring(copy.lastIndexOf('/') + 1);
+            }
+        }
+        return path;
+    }
+
+    private static String classpath(Resource location, String path) {
+        return location instanceof ClassPathResource classPath ? classPath.getPath() + path : null;
+    }
+
+    // El fitxer resolt (o la seva variant comprimida) a memòria, amb les capçaleres de l'original
+    // (Content-Encoding si és comprimit), Vary: Accept-Encoding i, si és una còpia amb hash, Cache-Control immutable
+    static final class StaticAsset extends AbstractResource implements HttpResource {
+
+        private final Resource original;
+        private final byte[] content;
+        private final HttpHeaders headers = new HttpHeaders();
+
+        StaticAsset(Resource original, boolean immutable, int maxMemoryBytes) throws IOException {
+            this.original = original;
+            long length = original.contentLength();
+            this.content = length <= maxMemoryBytes ? original.getContentAsByteArray() : null;
+            if (original instanceof HttpResource http) {
+                headers.putAll(http.getResponseHeaders());
+            }
+            // També l'original: una cache intermèdia no l'ha de servir als clients que accepten una versió comprimida
+            if (!headers.containsKey(HttpHeaders.VARY)) {
+                headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (immutable) {
+                headers.set(HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return content != null ? new ByteArrayInputStream(content) : original.getInputStream();
+        }
+
+        @Override
+        public byte[] getContentAsByteArray() throws IOException {
+            return content != null ? content : original.getContentAsByteArray();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return content != null ? content.length : original.contentLength();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return original.lastModified();
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public String getFilename() {
+            return original.getFilename();
+        }
+
+        @Override
+        public String getDescription() {
+            return original.getDescription();
+        }
+
+        @Override
+        public HttpHeaders getResponseHeaders() {
+            return headers;
+        }
+    }
+}
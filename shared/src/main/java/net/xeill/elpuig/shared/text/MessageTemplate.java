@@ -0,0 +1,200 @@
+package net.xeill.elpuig.shared.text;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Plantilla de missatge compilada un sol cop (per exemple "Hello, %s!" o un JSON sencer).
+// String.format torna a analitzar el format i crea un Formatter a cada crida; aquí el format ja està
+// partit en trossos de text (i els seus bytes UTF-8) i només queda copiar-los i posar-hi els valors:
+//   %s  el text, escapat segons Escape (JSON, HTML o tal qual)
+//   %d  el número
+// writeTo escriu els bytes UTF-8 directament al stream de la resposta: no cal passar per Jackson
+// ni crear cap array per petició. El stream del servidor ja té el seu buffer, i a diferència d'un buffer
+// per fil també serveix amb fils virtuals (cada petició té el seu fil).
+public final class MessageTemplate {
+
+    public enum Escape { NONE, JSON, HTML }
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    // literals.length == placeholders.length + 1: literal, placeholder, literal, ..., literal
+    private final String[] literals;
+    private final byte[][] literalBytes;
+    private final char[] placeholders;
+    private final int literalsLength;
+
+    private MessageTemplate(List<String> literals, List<Character> placeholders) {
+        this.literals = literals.toArray(new String[0]);
+        this.literalBytes = new byte[this.literals.length][];
+        int chars = 0;
+        for (int i = 0; i < this.literals.length; i++) {
+            literalBytes[i] = this.literals[i].getBytes(StandardCharsets.UTF_8);
+            chars += this.literals[i].length();
+        }
+        this.placeholders = new char[placeholders.size()];
+        for (int i = 0; i < this.placeholders.length; i++) {
+            this.placeholders[i] = placeholders.get(i);
+        }
+        this.literalsLength = chars;
+    }
+
+    // Només s'accepten %s, %d i %% (un % literal)
+    public static MessageTemplate compile(String pattern) {
+        List<String> literals = new ArrayList<>();
+        List<Character> placeholders = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            char next = ++i < pattern.length() ? pattern.charAt(i) : 0;
+            if (next == '%') {
+                literal.append('%');
+            } else if (next == 's' || next == 'd') {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                placeholders.add(next);
+            } else {
+                throw new IllegalArgumentException("Unsupported placeholder at " + (i - 1) + " in: " + pattern);
+            }
+        }
+        literals.add(literal.toString());
+        return new MessageTemplate(literals, placeholders);
+    }
+
+    // El missatge com a String
+    public String render(long number, String text, Escape escape) {
+        StringBuilder out = new StringBuilder(literalsLength + placeholders.length * (text.length() + 4));
+        for (int i = 0; i < placeholders.length; i++) {
+            out.append(literals[i]);
+            if (placeholders[i] == 'd') {
+                out.append(number);
+            } else {
+                appendEscaped(out, text, escape);
+            }
+        }
+        return out.append(literals[placeholders.length]).toString();
+    }
+
+    // Escriu el missatge en UTF-8 a out (per exemple response.getOutputStream()), sense crear cap array
+    public void writeTo(long number, String text, Escape escape, OutputStream out) throws IOException {
+        for (int i = 0; i < placeholders.length; i++) {
+            out.write(literalBytes[i]);
+            if (placeholders[i] == 'd') {
+                writeNumber(number, out);
+            } else {
+                writeEscaped(text, escape, out);
+            }
+        }
+        out.write(literalBytes[placeholders.length]);
+    }
+
+    // Substitut ASCII d'un caràcter que s'ha d'escapar, o null si es deixa tal qual
+    private static String escaped(char c, Escape escape) {
+        switch (escape) {
+            case JSON:
+                switch (c) {
+                    case '"': return "\\\"";
+                    case '\\': return "\\\\";
+                    case '\n': return "\\n";
+                    case '\r': return "\\r";
+                    case '\t': return "\\t";
+                    case '\b': return "\\b";
+                    case '\f': return "\\f";
+                    default: return null;
+                }
+            case HTML:
+                switch (c) {
+                    case '&': return "&amp;";
+                    case '<': return "&lt;";
+                    case '>': return "&gt;";
+                    case '"': return "&quot;";
+                    case '\'': return "&#39;";
+                    default: return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    // Cal mirar-ho quan escaped ha retornat null: la resta de caràcters de control (< 0x20) en JSON van com a \\u00XX
+    private static boolean jsonControl(char c, Escape escape) {
+        return escape == Escape.JSON && c < 0x20;
+    }
+
+    private static void appendEscaped(StringBuilder out, String text, Escape escape) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String replacement = escaped(c, escape);
+            if (replacement != null) {
+                out.append(replacement);
+            } else if (jsonControl(c, escape)) {
+                out.append("\\u00").append((char) HEX[c >> 4]).append((char) HEX[c & 0xF]);
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static void writeEscaped(String text, Escape escape, OutputStream out) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String replacement = escaped(c, escape);
+            if (replacement != null) {
+                for (int j = 0; j < replacement.length(); j++) {
+                    out.write(replacement.charAt(j));
+                }
+            } else if (jsonControl(c, escape)) {
+                out.write('\\');
+                out.write('u');
+                out.write('0');
+                out.write('0');
+                out.write(HEX[c >> 4]);
+                out.write(HEX[c & 0xF]);
+            } else if (c < 0x80) {
+                out.write(c);
+            } else if (c < 0x800) {
+                out.write(0xC0 | c >> 6);
+                out.write(0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                out.write(0xF0 | cp >> 18);
+                out.write(0x80 | cp >> 12 & 0x3F);
+                out.write(0x80 | cp >> 6 & 0x3F);
+                out.write(0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // Surrogate sense parella: '?' com fa String.getBytes
+                out.write('?');
+            } else {
+                out.write(0xE0 | c >> 12);
+                out.write(0x80 | c >> 6 & 0x3F);
+                out.write(0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    // Les xifres de la més significativa a la menys, sense passar per Long.toString
+    private static void writeNumber(long n, OutputStream out) throws IOException {
+        if (n == Long.MIN_VALUE) {
+            out.write(MIN_LONG);
+            return;
+        }
+        if (n < 0) {
+            out.write('-');
+            n = -n;
+        }
+        long divisor = 1;
+        while (n / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.write((int) ('0' + n / divisor % 10));
+        }
+    }
+}
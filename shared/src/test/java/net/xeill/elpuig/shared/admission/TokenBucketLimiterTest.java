@@ -0,0 +1,122 @@
+package net.xeill.elpuig.shared.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Amb 1 petició per segon la ràfega no es reomple durant el test: les comptes són exactes
+class TokenBucketLimiterTest {
+
+    @Test
+    void admitsTheBurstAndThenRejects() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 5, 1024);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire("a")).isZero();
+        }
+        // Fins que no passi un segon des de la primera no hi torna a haver lloc
+        assertThat(limiter.tryAcquire("a")).isPositive().isLessThanOrEqualTo(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void rejectedRequestsDoNotConsumeTokens() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 1, 1024);
+
+        assertThat(limiter.tryAcquire("a")).isZero();
+        long first = limiter.tryAcquire("a");
+        long second = limiter.tryAcquire("a");
+        // Si els rebutjos gastessin, l'espera creixeria un segon a cada intent
+        assertThat(second).isPositive().isLessThanOrEqualTo(first);
+    }
+
+    @Test
+    void refillsAtTheConfiguredRate() throws InterruptedException {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(20, 1, 1024);
+
+        // Les dues crides abans de cap assert: carregar AssertJ pot trigar més que l'interval de 50 ms
+        long first = limiter.tryAcquire("a");
+        long wait = limiter.tryAcquire("a");
+        assertThat(first).isZero();
+        assertThat(wait).isPositive().isLessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        TimeUnit.NANOSECONDS.sleep(wait + TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(limiter.tryAcquire("a")).isZero();
+    }
+
+    @Test
+    void clientsHaveSeparateBuckets() {
+        // Amb 2^20 posicions, que "a" i "b" caiguin a la mateixa és gairebé impossible
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 1, 1 << 20);
+
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isPositive();
+        assertThat(limiter.tryAcquire("b")).isZero();
+    }
+
+    @Test
+    void keysWithTheSameHashCodeHaveSeparateBuckets() {
+        // Des d'admission.client-header el client tria la clau: no pot buidar el bucket d'un altre
+        // només perquè tinguin el mateix String.hashCode
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+        assertThat("AaAa".hashCode()).isEqualTo("BBBB".hashCode());
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 1, 1 << 20);
+
+        assertThat(limiter.tryAcquire("Aa")).isZero();
+        assertThat(limiter.tryAcquire("Aa")).isPositive();
+        assertThat(limiter.tryAcquire("BB")).isZero();
+        assertThat(limiter.tryAcquire("AaAa")).isZero();
+        assertThat(limiter.tryAcquire("BBBB")).isZero();
+    }
+
+    @Test
+    void clientsInTheSameSlotShareTheLimit() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 2, 1);
+
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("b")).isZero();
+        assertThat(limiter.tryAcquire("c")).isPositive();
+    }
+
+    @Test
+    void concurrentClientsNeverGetMoreThanTheBurst() throws InterruptedException {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 100, 1024);
+        AtomicInteger admitted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (limiter.tryAcquire("shared") == 0) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // La ràfega sencera, i com a molt una petició més si el test ha durat més d'un segon
+        assertThat(admitted.get()).isBetween(100, 101);
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThatThrownBy(() -> new TokenBucketLimiter(0, 1, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenBucketLimiter(1, 0, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenBucketLimiter(1, 1, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,157 @@
+package net.xeill.elpuig.shared.text;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Els noms arriben de la query string: es comparen amb el que escriurien Jackson (JSON) i HtmlUtils (HTML).
+// render ha de donar el mateix text que writeTo descodificat com a UTF-8, excepte els surrogates sense parella
+class MessageTemplateTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern UNICODE_ESCAPE = Pattern.compile("\\\\u00([0-9A-F]{2})");
+
+    private static final List<String> HOSTILE = List.of(
+            "World",
+            "",
+            "\"}, \"admin\": true, \"x\": {\"",
+            "back\\slash",
+            "<script>alert('x')</script>",
+            "Tom & \"Jerry\"",
+            "line\nbreak\r\ttab\b\f",
+            "\u0000\u0001\u001f\u007f",
+            "Núria Gràcia",
+            "日本語",
+            "emoji 😀 and 🎉",
+            "%s %d %%");
+
+    private static String written(MessageTemplate template, long number, String text, MessageTemplate.Escape escape) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.writeTo(number, text, escape, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    // Jackson escriu els \\u00XX amb majúscules i MessageTemplate amb minúscules: els dos són JSON vàlid
+    private static String jackson(String text) throws IOException {
+        Matcher m = UNICODE_ESCAPE.matcher(MAPPER.writeValueAsString(text));
+        StringBuilder out = new StringBuilder();
+        while (m.find()) {
+            m.appendReplacement(out, "\\\\u00" + m.group(1).toLowerCase());
+        }
+        return m.appendTail(out).toString();
+    }
+
+    @Test
+    void jsonMatchesJackson() throws IOException {
+        MessageTemplate template = MessageTemplate.compile("{\"id\":%d,\"content\":\"Hello, %s!\"}");
+
+        for (String name : HOSTILE) {
+            String expected = "{\"id\":7,\"content\":" + jackson("Hello, " + name + "!") + "}";
+            assertThat(template.render(7, name, MessageTemplate.Escape.JSON)).as(name).isEqualTo(expected);
+            assertThat(written(template, 7, name, MessageTemplate.Escape.JSON)).as(name).isEqualTo(expected);
+            // I Jackson el torna a llegir igual
+            assertThat(MAPPER.readTree(expected).get("content").asText()).isEqualTo("Hello, " + name + "!");
+        }
+    }
+
+    @Test
+    void jsonControlCharactersUseUnicodeEscapes() {
+        MessageTemplate template = MessageTemplate.compile("%s");
+
+        assertThat(template.render(0, "\u0000\u0007\u001f", MessageTemplate.Escape.JSON)).isEqualTo("\\u0000\\u0007\\u001f");
+        assertThat(template.render(0, "\n\r\t\b\f", MessageTemplate.Escape.JSON)).isEqualTo("\\n\\r\\t\\b\\f");
+        // DEL (0x7f) no és un caràcter de control per a JSON
+        assertThat(template.render(0, "\u007f", MessageTemplate.Escape.JSON)).isEqualTo("\u007f");
+    }
+
+    @Test
+    void htmlMatchesHtmlUtils() throws IOException {
+        MessageTemplate template = MessageTemplate.compile("<p title=\"%s\">Hello, %s!</p>");
+
+        for (String name : HOSTILE) {
+            // Amb UTF-8, HtmlUtils només escapa els caràcters especials (no "à" com a &agrave;)
+            String escaped = HtmlUtils.htmlEscape(name, "UTF-8");
+            String expected = "<p title=\"" + escaped + "\">Hello, " + escaped + "!</p>";
+            assertThat(template.render(0, name, MessageTemplate.Escape.HTML)).as(name).isEqualTo(expected);
+            assertThat(written(template, 0, name, MessageTemplate.Escape.HTML)).as(name).isEqualTo(expected);
+        }
+        assertThat(template.render(0, "&<>\"'", MessageTemplate.Escape.HTML))
+                .isEqualTo("<p title=\"&amp;&lt;&gt;&quot;&#39;\">Hello, &amp;&lt;&gt;&quot;&#39;!</p>");
+    }
+
+    @Test
+    void noEscapeCopiesTheText() throws IOException {
+        MessageTemplate template = MessageTemplate.compile("Hello, %s!");
+
+        for (String name : HOSTILE) {
+            assertThat(template.render(0, name, MessageTemplate.Escape.NONE)).isEqualTo("Hello, " + name + "!");
+            assertThat(written(template, 0, name, MessageTemplate.Escape.NONE)).isEqualTo("Hello, " + name + "!");
+        }
+    }
+
+    @Test
+    void surrogatePairsAreWrittenAsOneCodePoint() throws IOException {
+        MessageTemplate template = MessageTemplate.compile("%s");
+        String emoji = "😀";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.writeTo(0, emoji, MessageTemplate.Escape.JSON, out);
+        assertThat(out.toByteArray()).isEqualTo(emoji.getBytes(StandardCharsets.UTF_8)).hasSize(4);
+    }
+
+    @Test
+    void loneSurrogatesAreWrittenAsQuestionMarks() throws IOException {
+        MessageTemplate template = MessageTemplate.compile("[%s]");
+        // Una meitat alta sense la baixa (també al final), i una baixa sense l'alta
+        String text = "a\uD83Db\uDE00c\uD83D";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.writeTo(0, text, MessageTemplate.Escape.NONE, out);
+        // El mateix que fa String.getBytes
+        assertThat(out.toByteArray()).isEqualTo(("[" + text + "]").getBytes(StandardCharsets.UTF_8));
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("[a?b?c?]");
+        // render retorna un String: els surrogates hi queden tal qual
+        assertThat(template.render(0, text, MessageTemplate.Escape.NONE)).isEqualTo("[" + text + "]");
+    }
+
+    @Test
+    void numbersMatchLongToString() throws IOException {
+        MessageTemplate template = MessageTemplate.compile("%d");
+        long[] numbers = {0, 1, 9, 10, 99, 100, -1, -10, 1_000_000_007L, 999_999_999_999_999_999L,
+                Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+
+        for (long n : numbers) {
+            assertThat(template.render(n, "", MessageTemplate.Escape.NONE)).isEqualTo(Long.toString(n));
+            assertThat(written(template, n, "", MessageTemplate.Escape.NONE)).isEqualTo(Long.toString(n));
+        }
+    }
+
+    @Test
+    void compilesLiteralPercentSigns() throws IOException {
+        MessageTemplate template = MessageTemplate.compile("100%% %s, %d%%");
+
+        assertThat(template.render(5, "sure", MessageTemplate.Escape.NONE)).isEqualTo("100% sure, 5%");
+        assertThat(written(template, 5, "sure", MessageTemplate.Escape.NONE)).isEqualTo("100% sure, 5%");
+        assertThat(MessageTemplate.compile("no placeholders").render(1, "x", MessageTemplate.Escape.NONE)).isEqualTo("no placeholders");
+    }
+
+    @Test
+    void rejectsUnsupportedPlaceholders() {
+        assertThatThrownBy(() -> MessageTemplate.compile("Hello, %x!")).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("at 7");
+        assertThatThrownBy(() -> MessageTemplate.compile("%5d")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MessageTemplate.compile("%n")).isInstanceOf(IllegalArgumentException.class);
+        // Un % sol al final
+        assertThatThrownBy(() -> MessageTemplate.compile("100%")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
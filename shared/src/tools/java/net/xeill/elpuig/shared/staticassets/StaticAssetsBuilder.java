@@ -0,0 +1,198 @@
+package net.xeill.elpuig.shared.staticassets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+// Pas del build (exec-maven-plugin, fase process-classes) que prepara els fitxers estàtics perquè
+// StaticAssetResolver els pugui servir ja comprimits i amb cache de llarga durada. No forma part de l'aplicació:
+// s'executa com a fitxer font (java StaticAssetsBuilder.java), amb el classpath del projecte.
+//
+//   java StaticAssetsBuilder.java <target/classes> [--fingerprint=<camí>]... [--compress=<camí>]...
+//
+// --fingerprint: copia cada fitxer del camí (un fitxer o un directori de target/classes, o un fitxer del classpath,
+//                per exemple d'un webjar) amb el hash del contingut al nom: styles.css -> styles-1a2b3c4d5e6f7a8b.css.
+//                Si el contingut canvia, el nom també, i el navegador pot guardar cada versió per sempre.
+//                Les parelles original -> còpia es guarden a static-assets.properties.
+// --compress:    a més de les còpies amb hash, també es comprimeixen aquests fitxers (per exemple index.html,
+//                que no pot canviar de nom).
+// De cada fitxer de text s'escriu un .gz (gzip) i, si zstd-jni és al classpath, un .zst (zstd). Cadascun només
+// si ocupa menys que l'original. Brotli no: no hi ha cap codificador en Java pur.
+// Les còpies d'execucions anteriors que ja no toquen (el fitxer ha canviat) s'esborren.
+public class StaticAssetsBuilder {
+
+    static final String MANIFEST = "static-assets.properties";
+    static final Set<String> COMPRESSIBLE = Set.of("html", "css", "js", "mjs", "json", "map", "svg", "txt", "xml");
+    static final List<String> ENCODED_EXTENSIONS = List.of(".gz", ".zst");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Usage: StaticAssetsBuilder <classes-dir> [--fingerprint=<path>]... [--compress=<path>]...");
+        }
+        Path classes = Paths.get(args[0]);
+        Map<String, String> previous = readManifest(classes.resolve(MANIFEST));
+        Map<String, String> manifest = new TreeMap<>();
+        Set<Path> compress = new LinkedHashSet<>();
+
+        for (String arg : List.of(args).subList(1, args.length)) {
+            if (arg.startsWith("--fingerprint=")) {
+                String path = trimSlashes(arg.substring("--fingerprint=".length()));
+                for (String file : files(classes, path, previous.values())) {
+                    byte[] content = read(classes, file);
+                    String copy = fingerprinted(file, content);
+                    Path target = classes.resolve(copy);
+                    Files.createDirectories(target.getParent());
+                    Files.write(target, content);
+                    manifest.put(file, copy);
+                    compress.add(target);
+                }
+            } else if (arg.startsWith("--compress=")) {
+                String path = trimSlashes(arg.substring("--compress=".length()));
+                for (String file : files(classes, path, previous.values())) {
+                    compress.add(classes.resolve(file));
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        Method zstd = zstd();
+        int written = 0;
+        for (Path file : compress) {
+            if (!COMPRESSIBLE.contains(extension(file.getFileName().toString()))) {
+                continue;
+            }
+            byte[] content = Files.readAllBytes(file);
+            written += writeIfSmaller(file, ".gz", content, gzip(content));
+            if (zstd != null) {
+                written += writeIfSmaller(file, ".zst", content, (byte[]) zstd.invoke(null, content, 19));
+            }
+        }
+
+        // Còpies que ja no es fan servir
+        for (String old : previous.values()) {
+            if (!manifest.containsValue(old)) {
+                Files.deleteIfExists(classes.resolve(old));
+                for (String extension : ENCODED_EXTENSIONS) {
+                    Files.deleteIfExists(classes.resolve(old + extension));
+                }
+            }
+        }
+
+        // Properties es llegeix en ISO-8859-1: el fitxer només ha de tenir ASCII
+        StringBuilder properties = new StringBuilder("# StaticAssetsBuilder: original = fitxer amb el hash del contingut al nom\n");
+        manifest.forEach((file, copy) -> properties.append(file).append('=').append(copy).append('\n'));
+        Files.writeString(classes.resolve(MANIFEST), properties, StandardCharsets.ISO_8859_1);
+        System.out.printf("Static assets: %d fingerprinted, %d compressed variants%s%n",
+                manifest.size(), written, zstd == null ? " (zstd not available)" : "");
+    }
+
+    // Fitxers del camí (relatius a target/classes). Un camí que no és a target/classes s'ha de trobar al classpath
+    private static List<String> files(Path classes, String path, Iterable<String> previousCopies) throws IOException {
+        Path local = classes.resolve(path);
+        if (Files.isRegularFile(local) || !Files.exists(local)) {
+            return List.of(path);
+        }
+        Set<String> skip = new LinkedHashSet<>();
+        previousCopies.forEach(skip::add);
+        try (Stream<Path> walk = Files.walk(local)) {
+            return walk.filter(Files::isRegularFile)
+                    .map(file -> classes.relativize(file).toString().replace('\\', '/'))
+                    .filter(file -> !skip.contains(file) && ENCODED_EXTENSIONS.stream().noneMatch(file::endsWith))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static byte[] read(Path classes, String file) throws IOException {
+        Path local = classes.resolve(file);
+        if (Files.isRegularFile(local)) {
+            return Files.readAllBytes(local);
+        }
+        try (InputStream in = ClassLoader.getSystemResourceAsStream(file)) {
+            if (in == null) {
+                throw new IOException("Not found in " + classes + " nor on the classpath: " + file);
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    // css/bootstrap.min.css -> css/bootstrap.min-<hash>.css
+    private static String fingerprinted(String file, byte[] content) throws Exception {
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)).substring(0, 16);
+        int slash = file.lastIndexOf('/');
+        int dot = file.lastIndexOf('.');
+        return dot > slash ? file.substring(0, dot) + "-" + hash + file.substring(dot) : file + "-" + hash;
+    }
+
+    private static int writeIfSmaller(Path file, String extension, byte[] content, byte[] encoded) throws IOException {
+        Path target = file.resolveSibling(file.getFileName() + extension);
+        if (encoded.length >= content.length) {
+            Files.deleteIfExists(target);
+            return 0;
+        }
+        Files.write(target, encoded);
+        return 1;
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Zstd.compress(byte[], int) de zstd-jni, o null si no és al classpath o no té llibreria nativa per a aquesta plataforma
+    private static Method zstd() {
+        try {
+            Method compress = Class.forName("com.github.luben.zstd.Zstd").getMethod("compress", byte[].class, int.class);
+            compress.invoke(null, new byte[1], 19);
+            return compress;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> readManifest(Path manifest) throws IOException {
+        Map<String, String> entries = new TreeMap<>();
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.ISO_8859_1)) {
+                int eq = line.indexOf('=');
+                if (!line.startsWith("#") && eq > 0) {
+                    entries.put(line.substring(0, eq), line.substring(eq + 1));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static String extension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1);
+    }
+
+    private static String trimSlashes(String path) {
+        return path.replaceAll("^/+|/+$", "");
+    }
+}
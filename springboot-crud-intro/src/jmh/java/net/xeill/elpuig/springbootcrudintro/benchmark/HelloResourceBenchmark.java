@@ -0,0 +1,67 @@
+package net.xeill.elpuig.springbootcrudintro.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import net.xeill.elpuig.springbootcrudintro.Hello;
+import net.xeill.elpuig.springbootcrudintro.HelloResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Benchmark dels endpoints /hello i /hello/bye de HelloResource (cridant els mètodes directament, amb una
+// MockHttpServletResponse que es buida a cada operació), i de com es feia abans: helloJackson (new Hello(name)
+// passat a JSON amb Jackson) i byeFormat (String.format).
+// Amb -prof gc es veu també la memòria que es crea per operació (gc.alloc.rate.norm)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HelloResourceBenchmark {
+
+    @Param({"World", "DAW"})
+    String name;
+
+    final HelloResource resource = new HelloResource();
+
+    final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    final ObjectWriter writer = Jackson2ObjectMapperBuilder.json().build().writerFor(Hello.class);
+
+    @Benchmark
+    public MockHttpServletResponse hello() throws IOException {
+        response.reset();
+        resource.hello(name, response);
+        return response;
+    }
+
+    @Benchmark
+    public byte[] helloJackson() throws JsonProcessingException {
+        return writer.writeValueAsBytes(new Hello(name));
+    }
+
+    @Benchmark
+    public MockHttpServletResponse bye() throws IOException {
+        response.reset();
+        resource.bye(name, response);
+        return response;
+    }
+
+    @Benchmark
+    public String byeFormat() {
+        return String.format("Adeu %s!", name);
+    }
+}
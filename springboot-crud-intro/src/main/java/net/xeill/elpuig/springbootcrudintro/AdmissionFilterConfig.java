@@ -0,0 +1,27 @@
+package net.xeill.elpuig.springbootcrudintro;
+
+import net.xeill.elpuig.shared.admission.AdmissionFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.Ordered;
+
+import java.util.List;
+
+// AdmissionFilter a /hello/*, sense cap camí exclòs (vegeu AdmissionFilter)
+@Configuration
+@Import(AdmissionFilter.class)
+public class AdmissionFilterConfig {
+
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilterRegistration(
+            AdmissionFilter filter,
+            @Value("${admission.url-patterns:/hello/*}") List<String> urlPatterns) {
+        FilterRegistrationBean<AdmissionFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setUrlPatterns(urlPatterns);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        return registration;
+    }
+}
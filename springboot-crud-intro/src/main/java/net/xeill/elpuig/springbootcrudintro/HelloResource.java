@@ -1,11 +1,16 @@
 package net.xeill.elpuig.springbootcrudintro;
 
+import jakarta.servlet.http.HttpServletResponse;
+import net.xeill.elpuig.shared.text.MessageTemplate;
 import org.apache.coyote.Request;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+
 /*
     Com a tasca extra de la sessió 1 es demana fer el següent:
     Treure l'endpoint de la classe on hi ha el main i crear una classe RestController que faci el mateix
@@ -22,20 +27,34 @@ public class HelloResource {
     // Usar una constant per definir el endpoint principal de la classe
     public static final String HELLO_RESOURCE = "/hello";
 
+    // Plantilles compilades una sola vegada (MessageTemplate, a ../shared): a cada petició no es torna a analitzar
+    // el format com fa String.format, i la resposta s'escriu directament al stream sense passar per Jackson
+    // ni crear cap array.
+    // HELLO_JSON és el mateix JSON que donava new Hello(name) (id sempre 1); el nom s'escapa com a text JSON
+    private static final MessageTemplate HELLO_JSON = MessageTemplate.compile("{\"id\":1,\"message\":\"%s\"}");
+    private static final MessageTemplate BYE = MessageTemplate.compile("Adeu %s!");
+
+    // El temps de cada endpoint el publica Spring a /actuator/prometheus (http.server.requests{uri=...})
+
     // Aqui tenim definiida el get sobre aquest metode de aqui
-    @GetMapping()
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     // El RequestParame s el nom de la propietat. Hi hagi un valor o no el string contindra un valor
     // que l'hi pasem en el request param. Que fa aixo? Fa un return d'un string
 
 
-    public Hello hello(@RequestParam(value = "name", defaultValue = "World") String name) {
-        return new Hello(name);
+    public void hello(@RequestParam(value = "name", defaultValue = "World") String name,
+                      HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        HELLO_JSON.writeTo(0, name, MessageTemplate.Escape.JSON, response.getOutputStream());
     }
 
     // http:localhost:8080/hello/bye?name?DAW
-    @GetMapping("bye") // Crec que es el mateix posar /bye que bye al GetMapping
-    public String bye(@RequestParam(value = "name", defaultValue = "World") String name) {
-        return String.format("Adeu %s!", name);
+    // Text pla: si el navegador ho mostrés com a HTML, un nom amb <script> s'executaria
+    @GetMapping(value = "bye", produces = MediaType.TEXT_PLAIN_VALUE) // Crec que es el mateix posar /bye que bye al GetMapping
+    public void bye(@RequestParam(value = "name", defaultValue = "World") String name,
+                    HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE + ";charset=UTF-8");
+        BYE.writeTo(0, name, MessageTemplate.Escape.NONE, response.getOutputStream());
     }
 
     @GetMapping("/test")
@@ -1,11 +1,16 @@
 package net.xeill.elpuig.springbootcrudintro;
 
+import jakarta.servlet.http.HttpServletResponse;
+import net.xeill.elpuig.shared.text.MessageTemplate;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+
 @SpringBootApplication
 @RestController
 public class SpringbootCrudIntroApplication {
@@ -16,18 +21,23 @@ public class SpringbootCrudIntroApplication {
 
 // https://spring.io/quickstart
 /* http://localhost:8080/hello-antic?name=xd */
-@GetMapping("/hello-antic")
-public String hello(@RequestParam(value = "name", defaultValue = "Món") String name) {
-    String missatge = String.format("Hola %s!", name);
+// La pàgina s'escriu directament a la resposta, ja en UTF-8
+@GetMapping(value = "/hello-antic", produces = MediaType.TEXT_HTML_VALUE)
+public void hello(@RequestParam(value = "name", defaultValue = "Món") String name, HttpServletResponse response) throws IOException {
+    response.setContentType(MediaType.TEXT_HTML_VALUE + ";charset=UTF-8");
+    HELLO_ANTIC.writeTo(0, name, MessageTemplate.Escape.HTML, response.getOutputStream());
+}
 
-    String comentari = """
+private static final String COMENTARI = """
         El mètode hello() que hem afegit està dissenyat per rebre un paràmetre de tipus String anomenat name,<br>
         i després combinar aquest paràmetre amb la paraula "Hola" dins del codi.<br><br>
         L’anotació @RestController indica a Spring que aquest codi descriu un endpoint web.<br><br>
         L’anotació @GetMapping("/hello-antic") vincula el mètode a l'adreça http://localhost:8080/hello-antic<br><br>
         Finalment, @RequestParam recull el valor "name" i usa "Món" si no es passa cap valor.
         """;
-    return "<p>" + missatge + "</p><p>" + comentari + "</p>";
-}
+
+// La pàgina es compila una sola vegada (MessageTemplate) en lloc de fer String.format a cada petició.
+// El nom s'escapa com a HTML (&lt; en lloc de <, ...): així un nom amb <script> no s'executa
+private static final MessageTemplate HELLO_ANTIC = MessageTemplate.compile("<p>Hola %s!</p><p>" + COMENTARI + "</p>");
 
 }
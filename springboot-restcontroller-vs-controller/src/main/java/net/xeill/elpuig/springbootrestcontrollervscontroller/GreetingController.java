@@ -1,15 +1,30 @@
 package net.xeill.elpuig.springbootrestcontrollervscontroller;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 
 import static java.awt.SystemColor.text;
 
@@ -20,6 +35,12 @@ public class GreetingController {
     // Usar una constant per definir el endpoint principal de la classe “/greeting”
     public static final String GREETING_CONTROLLER = "/greeting";
 
+    // Missatges per pàgina per defecte i màxim
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final Logger log = LoggerFactory.getLogger(GreetingController.class);
+
     @Value("${welcome-text}")
     String wel;
 
@@ -27,17 +48,92 @@ public class GreetingController {
     @Autowired
     GreetingService service;
 
+    // /greeting/stream pinta greeting.html amb el motor de Thymeleaf directament, per enviar-la a trossos
+    // de streamChunkRows files
+    private final ITemplateEngine templates;
+    private final int streamChunkRows;
+
+    // El temps de cada petició ja el mesura Spring a http.server.requests{uri=...}
+    public GreetingController(ITemplateEngine templates,
+                              @Value("${greeting.stream.chunk-rows:200}") int streamChunkRows) {
+        this.templates = templates;
+        this.streamChunkRows = Math.max(1, streamChunkRows);
+    }
+
     // http://localhost:8080/greeting?name=asdad&name=xd&name=pepe&name=test
     //@GetMapping("/greeting")
     // Canviar la String name per un List<String> i adaptar l’html amb el Thymeleaf per
     // poder veure a la mateixa plana tots els texts entrats i desats a l’array
+    // Ara només es mostra la primera pàgina (els missatges més nous): la resta a /greeting/messages
     @GetMapping
-    public String greeting(@RequestParam(name="name", required=false, defaultValue="World")String name, Model model) {
+    public String greeting(@RequestParam(name="name", required=false, defaultValue="World")String name,
+                           @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size, Model model) {
         //model.addAttribute("name", name);
         //model.addAttribute("wel", wel);
-        System.out.println(wel);
+        log.debug("{}", wel);
         service.addWord(name);
-        model.addAttribute("msgs", service.getAllMessages());
+        return page(0, size, model);
+    }
+
+    // http://localhost:8080/greeting/messages?page=2&size=20
+    // Només llegeix: passar de pàgina no afegeix cap missatge
+    @GetMapping("/messages")
+    public String messages(@RequestParam(defaultValue = "0") int page,
+                           @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size, Model model) {
+        return page(page, size, model);
+    }
+
+    // http://localhost:8080/greeting/stream
+    // Tots els missatges guardats en una sola pàgina (la mateixa plantilla greeting.html, amb el formulari), però
+    // enviada a trossos de greeting.stream.chunk-rows files: el navegador rep el començament de seguida, encara que
+    // n'hi hagi molts, i no es construeix tota la pàgina en memòria.
+    // Sense "page" la plantilla no mostra la paginació sinó l'enllaç a /greeting/messages
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> stream() {
+        Locale locale = LocaleContextHolder.getLocale();
+        StreamingResponseBody body = out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            Context context = new Context(locale);
+            context.setVariable("msgs", flushingEvery(streamChunkRows, service.messages(), writer));
+            templates.process("greeting", context, writer);
+            writer.flush();
+        };
+        return ResponseEntity.ok().contentType(new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8)).body(body);
+    }
+
+    private String page(int page, int size, Model model) {
+        GreetingPage messages = service.getMessages(Math.max(0, page), Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        model.addAttribute("page", messages);
+        model.addAttribute("msgs", messages.messages());
         return "greeting";
     }
+
+    // Els missatges per al th:each de la plantilla. Thymeleaf escriu cada fila a writer quan la demana,
+    // així que abans de la primera i després de cada "rows" files s'envia al navegador el que ja s'ha escrit
+    private static Iterable<String> flushingEvery(int rows, Iterator<String> messages, Writer writer) {
+        return () -> new Iterator<>() {
+            private long count;
+
+            @Override
+            public boolean hasNext() {
+                return messages.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (count++ % rows == 0) {
+                    flush(writer);
+                }
+                return messages.next();
+            }
+        };
+    }
+
+    private static void flush(Writer writer) {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
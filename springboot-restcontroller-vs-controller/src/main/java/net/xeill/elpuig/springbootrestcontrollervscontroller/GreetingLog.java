@@ -0,0 +1,115 @@
+package net.xeill.elpuig.springbootrestcontrollervscontroller;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Registre de missatges de mida fixa (buffer circular), sense locks.
+// Cada missatge rep un número de seqüència (0, 1, 2...) i va a la casella seq % capacity:
+// quan el buffer és ple, el missatge nou trepitja el més antic.
+//   - add reserva el número amb getAndIncrement i després publica el missatge a la casella amb un
+//     compareAndSet; si mentrestant la casella ja té un número més alt (un fil que ha reservat
+//     capacity números més tard ja l'ha publicat), el missatge ja és vell i no s'hi escriu
+//   - qui llegeix comprova que la casella té el número que espera: si no el té, el missatge
+//     encara no s'ha publicat o ja s'ha trepitjat, i se salta
+class GreetingLog {
+
+    private record Entry(long seq, String text) {
+    }
+
+    private final int capacity;
+    private final AtomicReferenceArray<Entry> slots;
+    // Següent número de seqüència (= missatges afegits des de l'arrencada)
+    private final AtomicLong next = new AtomicLong();
+
+    GreetingLog(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    void add(String text) {
+        long seq = next.getAndIncrement();
+        int index = (int) (seq % capacity);
+        Entry entry = new Entry(seq, text);
+        while (true) {
+            Entry current = slots.get(index);
+            if (current != null && current.seq() > seq) {
+                return;
+            }
+            if (slots.compareAndSet(index, current, entry)) {
+                return;
+            }
+        }
+    }
+
+    // Missatges afegits des de l'arrencada (també els que ja s'han trepitjat)
+    long total() {
+        return next.get();
+    }
+
+    // Missatges que es poden llegir: com a molt capacity
+    int retained() {
+        return (int) Math.min(next.get(), capacity);
+    }
+
+    // Fins a "limit" missatges, del més nou al més antic, saltant-ne "skip" dels més nous
+    List<String> newest(long skip, int limit) {
+        long total = next.get();
+        long end = total - skip;
+        long first = Math.max(0, total - capacity);
+        List<String> page = new ArrayList<>(Math.min(limit, capacity));
+        for (long seq = end - 1; seq >= first && page.size() < limit; seq--) {
+            String text = read(seq);
+            if (text != null) {
+                page.add(text);
+            }
+        }
+        return page;
+    }
+
+    // Tots els missatges que hi ha, del més antic al més nou. Es llegeixen a mesura que es demanen:
+    // els que s'afegeixen després de crear l'iterador no hi surten
+    Iterator<String> iterator() {
+        long end = next.get();
+        return new Iterator<>() {
+            private long seq = Math.max(0, end - capacity);
+            private String pending = advance();
+
+            @Override
+            public boolean hasNext() {
+                return pending != null;
+            }
+
+            @Override
+            public String next() {
+                if (pending == null) {
+                    throw new NoSuchElementException();
+                }
+                String text = pending;
+                pending = advance();
+                return text;
+            }
+
+            private String advance() {
+                while (seq < end) {
+                    String text = read(seq++);
+                    if (text != null) {
+                        return text;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private String read(long seq) {
+        Entry entry = slots.get((int) (seq % capacity));
+        return entry != null && entry.seq() == seq ? entry.text() : null;
+    }
+}
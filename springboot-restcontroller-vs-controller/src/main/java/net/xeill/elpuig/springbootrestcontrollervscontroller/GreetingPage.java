@@ -0,0 +1,20 @@
+package net.xeill.elpuig.springbootrestcontrollervscontroller;
+
+import java.util.List;
+
+// Una pàgina de missatges, del més nou al més antic. page comença a 0 (els més nous).
+// total: missatges afegits des de l'arrencada; retained: els que encara es guarden
+public record GreetingPage(List<String> messages, int page, int size, long total, int retained) {
+
+    public boolean hasPrevious() {
+        return page > 0;
+    }
+
+    public boolean hasNext() {
+        return (long) (page + 1) * size < retained;
+    }
+
+    public int pages() {
+        return Math.max(1, (retained + size - 1) / size);
+    }
+}
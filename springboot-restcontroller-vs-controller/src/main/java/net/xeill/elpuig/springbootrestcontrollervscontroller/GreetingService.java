@@ -1,19 +1,69 @@
 package net.xeill.elpuig.springbootrestcontrollervscontroller;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
 
 @Service
 public class GreetingService {
-    private List<String> messages = new ArrayList<String>();
+    // Només es guarden els últims greeting.messages.capacity missatges (els més antics es perden).
+    // Poden arribar moltes peticions alhora: GreetingLog no fa servir cap lock, ni per afegir ni per llegir
+    private final GreetingLog messages;
+
+    // Quants cops s'ha saludat cada nom i els més saludats, amb memòria fixa (aproximat)
+    private final GreetingSketch names;
+
+    // Temps de cada mètode (greeting.service{method=...}).
+    // Els temporitzadors es creen un sol cop; cada mètode fa la feina dins de timer.record(...)
+    private final Timer addWordTimer;
+    private final Timer getMessagesTimer;
+
+    public GreetingService(MeterRegistry registry,
+                           @Value("${greeting.messages.capacity:1000}") int capacity,
+                           @Value("${greeting.stats.width:2048}") int statsWidth,
+                           @Value("${greeting.stats.depth:4}") int statsDepth,
+                           @Value("${greeting.stats.top-capacity:100}") int topCapacity) {
+        messages = new GreetingLog(capacity);
+        names = new GreetingSketch(statsWidth, statsDepth, topCapacity);
+        addWordTimer = Timer.builder("greeting.service").tag("method", "addWord").register(registry);
+        getMessagesTimer = Timer.builder("greeting.service").tag("method", "getMessages").register(registry);
+        // Quants missatges hi ha guardats (com a molt capacity) i quants s'han afegit des de l'arrencada
+        Gauge.builder("greeting.messages.size", this, GreetingService::size).register(registry);
+        Gauge.builder("greeting.messages.added", messages, GreetingLog::total).register(registry);
+    }
 
     public void addWord(String w) {
-        messages.add(w);
+        addWordTimer.record(() -> {
+            messages.add(w);
+            names.add(w);
+        });
+    }
+
+    // La pàgina "page" (0 = els més nous) de "size" missatges: la vista només recorre aquests
+    public GreetingPage getMessages(int page, int size) {
+        return getMessagesTimer.record(() ->
+                new GreetingPage(messages.newest((long) page * size, size), page, size, messages.total(), messages.retained()));
+    }
+
+    // Tots els missatges guardats, del més antic al més nou, sense copiar-los en cap llista
+    public Iterator<String> messages() {
+        return messages.iterator();
+    }
+
+    // Els k noms més saludats des de l'arrencada (també els que ja no són a messages)
+    public GreetingTop topNames(int k) {
+        return new GreetingTop(names.top(k), names.total(), names.errorBound());
+    }
+
+    public NameCount count(String name) {
+        return new NameCount(name, names.estimate(name));
     }
 
-    public List<String> getAllMessages() {
-        return messages;
+    public int size() {
+        return messages.retained();
     }
 }
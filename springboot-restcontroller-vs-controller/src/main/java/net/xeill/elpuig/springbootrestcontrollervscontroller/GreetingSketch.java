@@ -0,0 +1,167 @@
+package net.xeill.elpuig.springbootrestcontrollervscontroller;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Quants cops s'ha saludat cada nom, amb memòria fixa (per molts noms diferents que arribin).
+//   - Count-Min sketch: depth files de width comptadors. Cada nom suma 1 a un comptador de cada fila
+//     (triat amb un hash diferent per fila) i la seva estimació és el mínim d'aquests comptadors.
+//     L'estimació mai és menor que el valor real, i com a molt és més gran en total * e / width
+//     (amb probabilitat 1 - e^-depth)
+//   - Els hashos de les files surten d'un hash de 64 bits del nom amb una llavor aleatòria de cada instància
+//     (no de String.hashCode): dos noms només coincideixen a totes les files si coincideixen els 64 bits,
+//     i un client no pot triar noms que en facin pujar un altre perquè no sap la llavor
+//   - Top-K: els topCapacity noms amb l'estimació més alta. Només cal el lock quan un nom nou
+//     entra al top i en treu un altre, cosa que passa poques vegades quan els noms més freqüents ja hi són
+// Afegir un nom són depth getAndIncrement i un accés al mapa: es pot fer a cada petició.
+class GreetingSketch {
+
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+    private final long seed;
+    private final long[] seeds;
+    // Un sol AtomicLong seria un punt de contenció a cada salutació
+    private final LongAdder total = new LongAdder();
+
+    private final int topCapacity;
+    private final ConcurrentHashMap<String, Long> top = new ConcurrentHashMap<>();
+    private final ReentrantLock topLock = new ReentrantLock();
+    // Estimació més petita del top quan és ple: un nom amb menys no hi pot entrar (no cal agafar el lock)
+    private volatile long topMinimum;
+
+    GreetingSketch(int width, int depth, int topCapacity) {
+        if (width < 1 || depth < 1 || topCapacity < 1) {
+            throw new IllegalArgumentException("Invalid sketch settings: width=" + width
+                    + ", depth=" + depth + ", top=" + topCapacity);
+        }
+        // Amplada potència de 2: l'índex és hash & mask, sense divisió
+        int w = Integer.highestOneBit(width);
+        w = w < width ? w << 1 : w;
+        this.depth = depth;
+        this.mask = w - 1;
+        this.counters = new AtomicLongArray(w * depth);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.seed = random.nextLong();
+        this.seeds = new long[depth];
+        for (int i = 0; i < depth; i++) {
+            seeds[i] = random.nextLong();
+        }
+        this.topCapacity = topCapacity;
+    }
+
+    void add(String name) {
+        total.increment();
+        long hash = hash(name);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(hash, i)));
+        }
+        offer(name, estimate);
+    }
+
+    // Estimació de quants cops s'ha afegit el nom (0 si segur que mai)
+    long estimate(String name) {
+        long hash = hash(name);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            estimate = Math.min(estimate, counters.get(index(hash, i)));
+        }
+        return estimate;
+    }
+
+    // Els k noms més saludats (com a molt topCapacity), del més al menys
+    List<NameCount> top(int k) {
+        List<NameCount> names = new ArrayList<>(top.size());
+        top.forEach((name, count) -> names.add(new NameCount(name, count)));
+        names.sort(Comparator.comparingLong(NameCount::count).reversed().thenComparing(NameCount::name));
+        return names.size() > k ? new ArrayList<>(names.subList(0, k)) : names;
+    }
+
+    long total() {
+        return total.sum();
+    }
+
+    // Error màxim de les estimacions (amb probabilitat 1 - e^-depth): total * e / width
+    long errorBound() {
+        return (long) Math.ceil(total.sum() * Math.E / (mask + 1));
+    }
+
+    private void offer(String name, long estimate) {
+        // Ja és al top: només s'actualitza el seu comptador
+        if (top.computeIfPresent(name, (n, count) -> Math.max(count, estimate)) != null) {
+            return;
+        }
+        if (top.size() >= topCapacity && estimate <= topMinimum) {
+            return;
+        }
+        topLock.lock();
+        try {
+            if (top.size() < topCapacity) {
+                top.putIfAbsent(name, estimate);
+            } else {
+                Map.Entry<String, Long> smallest = smallest();
+                if (estimate > smallest.getValue()) {
+                    top.remove(smallest.getKey());
+                    top.putIfAbsent(name, estimate);
+                }
+            }
+            if (top.size() >= topCapacity) {
+                topMinimum = smallest().getValue();
+            }
+        } finally {
+            topLock.unlock();
+        }
+    }
+
+    // Cal tenir el lock
+    private Map.Entry<String, Long> smallest() {
+        Map.Entry<String, Long> smallest = null;
+        for (Map.Entry<String, Long> entry : top.entrySet()) {
+            if (smallest == null || entry.getValue() < smallest.getValue()) {
+                smallest = entry;
+            }
+        }
+        return Map.entry(smallest.getKey(), smallest.getValue());
+    }
+
+    private int index(long hash, int row) {
+        // Cada fila barreja el hash amb la seva llavor (la barreja és bijectiva: hashos diferents, índexs independents)
+        return row * (mask + 1) + ((int) mix(hash ^ seeds[row]) & mask);
+    }
+
+    // Hash de 64 bits dels caràcters del nom (4 caràcters de 16 bits per pas) amb la llavor de la instància.
+    // Cada pas és bijectiu: dos noms de la mateixa llargada que només difereixen en un bloc no poden coincidir
+    private long hash(String name) {
+        int length = name.length();
+        long h = seed ^ (length * 0x9E3779B97F4A7C15L);
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long block = (long) name.charAt(i) | (long) name.charAt(i + 1) << 16
+                    | (long) name.charAt(i + 2) << 32 | (long) name.charAt(i + 3) << 48;
+            h = mix(h ^ block);
+        }
+        if (i < length) {
+            long block = 0;
+            for (int shift = 0; i < length; i++, shift += 16) {
+                block |= (long) name.charAt(i) << shift;
+            }
+            h = mix(h ^ block);
+        }
+        return h;
+    }
+
+    // Finalitzador de SplitMix64
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,35 @@
+package net.xeill.elpuig.springbootrestcontrollervscontroller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+// El mateix servei que GreetingController, però amb @RestController: retorna JSON en lloc d'una vista
+@RestController
+@RequestMapping(GreetingStatsResource.GREETING_STATS)
+public class GreetingStatsResource {
+    public static final String GREETING_STATS = "/greeting/stats";
+
+    // Noms per defecte a /top (el màxim és greeting.stats.top-capacity)
+    public static final int DEFAULT_TOP = 10;
+
+    private final GreetingService service;
+
+    public GreetingStatsResource(GreetingService service) {
+        this.service = service;
+    }
+
+    // http://localhost:8080/greeting/stats/top?k=5
+    @GetMapping("/top")
+    public GreetingTop top(@RequestParam(defaultValue = "" + DEFAULT_TOP) int k) {
+        return service.topNames(Math.max(1, k));
+    }
+
+    // http://localhost:8080/greeting/stats/names/pepe
+    @GetMapping("/names/{name}")
+    public NameCount count(@PathVariable String name) {
+        return service.count(name);
+    }
+}
@@ -0,0 +1,8 @@
+package net.xeill.elpuig.springbootrestcontrollervscontroller;
+
+import java.util.List;
+
+// GET /greeting/stats/top: els noms més saludats, quantes salutacions s'han comptat en total
+// i l'error màxim de cada comptador (amb probabilitat alta)
+public record GreetingTop(List<NameCount> top, long total, long errorBound) {
+}
@@ -0,0 +1,5 @@
+package net.xeill.elpuig.springbootrestcontrollervscontroller;
+
+// Quants cops s'ha saludat un nom (estimació del Count-Min sketch: pot ser una mica més gran que el real)
+public record NameCount(String name, long count) {
+}
@@ -0,0 +1,53 @@
+package net.xeill.elpuig.springbootrestcontrollervscontroller;
+
+import net.xeill.elpuig.shared.staticassets.StaticAssetResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.CachingResourceResolver;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+
+import java.util.List;
+
+// Fitxers estàtics (static/index.html) servits des dels fitxers que prepara StaticAssetsBuilder en el build:
+// la variant comprimida que accepti el navegador (zstd, br o gzip; si no, l'original), llegida un sol cop i
+// tornada a validar amb Last-Modified (vegeu StaticAssetResolver). Substitueix el handler de Spring Boot
+// (spring.web.resources.add-mappings=false).
+@Configuration
+public class StaticResourceConfig implements WebMvcConfigurer {
+
+    // En ordre de preferència. Han de coincidir amb les extensions que escriu StaticAssetsBuilder
+    static final List<String> CONTENT_CODINGS = List.of("zstd", "br", "gzip");
+
+    private final int maxMemoryBytes;
+
+    public StaticResourceConfig(@Value("${static-assets.memory-max-bytes:1048576}") int maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        register(registry, StaticAssetResolver.fromManifest(maxMemoryBytes), "/**", "classpath:/static/");
+    }
+
+    private static void register(ResourceHandlerRegistry registry, StaticAssetResolver assets, String pattern, String location) {
+        // La cache ha de distingir totes les codificacions: amb les de per defecte (br, gzip), una resposta zstd
+        // es podria servir a un client que no l'accepta
+        CachingResourceResolver cache = new CachingResourceResolver(new ConcurrentMapCache("static-assets:" + pattern));
+        cache.setContentCodings(CONTENT_CODINGS);
+        EncodedResourceResolver encoded = new EncodedResourceResolver();
+        encoded.setContentCodings(CONTENT_CODINGS);
+        encoded.registerExtension("zstd", ".zst");
+        registry.addResourceHandler(pattern)
+                .addResourceLocations(location)
+                // Per defecte, tornar a validar (304 si no ha canviat). Les còpies amb hash ho canvien per immutable
+                .setCacheControl(CacheControl.noCache())
+                .resourceChain(false)
+                .addResolver(cache)
+                .addResolver(assets)
+                .addResolver(encoded);
+    }
+}
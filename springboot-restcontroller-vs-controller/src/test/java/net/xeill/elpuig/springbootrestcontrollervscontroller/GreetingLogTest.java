@@ -0,0 +1,124 @@
+package net.xeill.elpuig.springbootrestcontrollervscontroller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GreetingLogTest {
+
+    private static GreetingLog filled(int capacity, int count) {
+        GreetingLog log = new GreetingLog(capacity);
+        for (int i = 0; i < count; i++) {
+            log.add("m" + i);
+        }
+        return log;
+    }
+
+    private static List<String> all(GreetingLog log) {
+        List<String> texts = new ArrayList<>();
+        log.iterator().forEachRemaining(texts::add);
+        return texts;
+    }
+
+    @Test
+    void keepsEverythingUntilFull() {
+        GreetingLog log = filled(4, 3);
+
+        assertThat(log.total()).isEqualTo(3);
+        assertThat(log.retained()).isEqualTo(3);
+        assertThat(all(log)).containsExactly("m0", "m1", "m2");
+        assertThat(log.newest(0, 10)).containsExactly("m2", "m1", "m0");
+    }
+
+    @Test
+    void wrapsAroundOverwritingTheOldest() {
+        GreetingLog log = filled(4, 10);
+
+        assertThat(log.total()).isEqualTo(10);
+        assertThat(log.retained()).isEqualTo(4);
+        assertThat(all(log)).containsExactly("m6", "m7", "m8", "m9");
+        assertThat(log.newest(0, 10)).containsExactly("m9", "m8", "m7", "m6");
+    }
+
+    @Test
+    void pagesFromTheNewest() {
+        GreetingLog log = filled(8, 20);
+
+        assertThat(log.newest(0, 3)).containsExactly("m19", "m18", "m17");
+        assertThat(log.newest(3, 3)).containsExactly("m16", "m15", "m14");
+        // L'última pàgina s'acaba al més antic que queda (m12)
+        assertThat(log.newest(6, 3)).containsExactly("m13", "m12");
+        assertThat(log.newest(8, 3)).isEmpty();
+        assertThat(log.newest(100, 3)).isEmpty();
+    }
+
+    @Test
+    void iteratorDoesNotSeeLaterMessages() {
+        GreetingLog log = filled(4, 2);
+        Iterator<String> it = log.iterator();
+
+        log.add("m2");
+        assertThat(it.next()).isEqualTo("m0");
+        assertThat(it.next()).isEqualTo("m1");
+        assertThat(it.hasNext()).isFalse();
+        assertThatThrownBy(it::next).isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void iteratorSkipsMessagesOverwrittenWhileIterating() {
+        GreetingLog log = filled(4, 4);
+        Iterator<String> it = log.iterator();
+
+        // m0 ja és llegit (l'iterador en llegeix un per avançat); m1 i m2 es trepitgen abans de demanar-los
+        log.add("m4");
+        log.add("m5");
+        log.add("m6");
+        List<String> rest = new ArrayList<>();
+        it.forEachRemaining(rest::add);
+        assertThat(rest).containsExactly("m0", "m3");
+    }
+
+    // Amb molts fils i poques caselles, dos fils amb números separats per capacity es disputen la mateixa
+    // casella: en acabar, cada casella ha de tenir el seu número més alt, és a dir, els últims capacity missatges
+    @Test
+    void concurrentAddsKeepTheNewestMessages() throws InterruptedException {
+        int capacity = 4;
+        GreetingLog log = new GreetingLog(capacity);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 10_000; i++) {
+                    log.add("x");
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(log.total()).isEqualTo(80_000);
+        assertThat(log.newest(0, capacity)).hasSize(capacity);
+        assertThat(all(log)).hasSize(capacity);
+    }
+
+    @Test
+    void rejectsAnEmptyCapacity() {
+        assertThatThrownBy(() -> new GreetingLog(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,46 @@
+package net.xeill.elpuig.springbootrestcontrollervscontroller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GreetingSketchTest {
+
+    @Test
+    void estimatesNeverUndercount() {
+        GreetingSketch sketch = new GreetingSketch(64, 4, 10);
+        for (int i = 0; i < 1_000; i++) {
+            sketch.add("name" + (i % 100));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertThat(sketch.estimate("name" + i)).isGreaterThanOrEqualTo(10);
+        }
+        assertThat(sketch.total()).isEqualTo(1_000);
+    }
+
+    // "Aa" i "BB" (i les seves combinacions) tenen el mateix String.hashCode
+    @Test
+    void namesWithEqualHashCodesDoNotShareEveryRow() {
+        GreetingSketch sketch = new GreetingSketch(4096, 4, 10);
+        for (int i = 0; i < 1_000; i++) {
+            sketch.add("AaAa");
+        }
+        assertThat("BBBB".hashCode()).isEqualTo("AaAa".hashCode());
+        assertThat(sketch.estimate("BBBB")).isZero();
+        assertThat(sketch.estimate("AaBB")).isZero();
+        assertThat(sketch.estimate("AaAa")).isEqualTo(1_000);
+    }
+
+    @Test
+    void topKeepsTheMostFrequentNames() {
+        GreetingSketch sketch = new GreetingSketch(4096, 4, 3);
+        String[] names = {"Anna", "Joan", "Maria", "Pere", "Laia"};
+        for (int i = 0; i < names.length; i++) {
+            for (int j = 0; j <= i * 10; j++) {
+                sketch.add(names[i]);
+            }
+        }
+        assertThat(sketch.top(2)).extracting(NameCount::name).containsExactly("Laia", "Pere");
+        assertThat(sketch.top(10)).extracting(NameCount::name).containsExactly("Laia", "Pere", "Maria");
+    }
+}
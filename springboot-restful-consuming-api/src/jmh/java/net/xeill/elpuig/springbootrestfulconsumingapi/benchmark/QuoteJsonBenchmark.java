@@ -0,0 +1,62 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.Quote;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Llegir la resposta de l'API de Chuck Norris com a Quote (el que fa QuoteClient)
+// i tornar a escriure un Quote en JSON
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuoteJsonBenchmark {
+
+    // Una resposta real de https://api.chucknorris.io/jokes/random (els camps que Quote no té s'ignoren)
+    private static final String RESPONSE = "{\"categories\":[],\"created_at\":\"2020-01-05 13:42:25.099703\","
+            + "\"icon_url\":\"https://api.chucknorris.io/img/avatar/chuck-norris.png\",\"id\":\"5uHPfGrnSiqjgYUwz-DAog\","
+            + "\"updated_at\":\"2020-01-05 13:42:25.099703\",\"url\":\"https://api.chucknorris.io/jokes/5uHPfGrnSiqjgYUwz-DAog\","
+            + "\"value\":\"People who enjoy being green are known as \\\"tree huggers\\\". People who enjoy living are known as Chuck Norris huggers.\"}";
+
+    ObjectReader quoteReader;
+    ObjectWriter quoteWriter;
+    byte[] response;
+    Quote quote;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        quoteReader = mapper.readerFor(Quote.class);
+        quoteWriter = mapper.writerFor(Quote.class);
+        response = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        quote = quoteReader.readValue(response);
+    }
+
+    @Benchmark
+    public Quote readQuote() throws IOException {
+        return quoteReader.readValue(response);
+    }
+
+    @Benchmark
+    public byte[] writeQuote() throws IOException {
+        return quoteWriter.writeValueAsBytes(quote);
+    }
+}
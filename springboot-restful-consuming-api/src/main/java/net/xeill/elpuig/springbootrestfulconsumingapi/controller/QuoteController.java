@@ -7,6 +7,8 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 
+import java.util.concurrent.CompletableFuture;
+
 /*
     Controlador web. Rep peticions i retorna pàgines HTML.
  */
@@ -18,9 +20,14 @@ public class QuoteController {
     @Autowired
     QuoteService quoteService;
 
+    // Retorna un CompletableFuture: el fil de Tomcat queda lliure mentre s'espera l'API,
+    // i Spring pinta la vista quan l'acudit és a punt. El temps de la petició ja és a http.server.requests
     @GetMapping
-    public String index(Model model) {
-        model.addAttribute("quote", quoteService.getQuote());
-        return "chuck";
+    public CompletableFuture<String> index(Model model) {
+        return quoteService.getQuote()
+                .thenApply(quote -> {
+                    model.addAttribute("quote", quote);
+                    return "chuck";
+                });
     }
 }
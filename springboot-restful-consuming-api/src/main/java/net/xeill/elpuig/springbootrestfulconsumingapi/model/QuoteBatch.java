@@ -0,0 +1,8 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.model;
+
+import java.util.List;
+
+// Resposta de GET /api/quotes: els acudits (sense repetits), quants se n'han demanat,
+// i complete=false si n'hi ha menys perquè s'ha acabat el temps o l'API ha fallat
+public record QuoteBatch(List<Quote> quotes, int requested, boolean complete) {
+}
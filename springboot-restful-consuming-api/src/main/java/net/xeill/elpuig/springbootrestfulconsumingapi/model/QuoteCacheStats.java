@@ -0,0 +1,7 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.model;
+
+// Estat de la cache d'acudits (GET /api/quotes/cache). hitRatio = (memoryHits + diskHits) / lectures.
+// Amb el disc activat, entries són els acudits del disc (la memòria pot tenir-ne d'esborrats del disc)
+public record QuoteCacheStats(int entries, int memoryEntries, long diskBytes,
+                              long memoryHits, long diskHits, long misses, double hitRatio) {
+}
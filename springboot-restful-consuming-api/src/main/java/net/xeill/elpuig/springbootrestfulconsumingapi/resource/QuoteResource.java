@@ -0,0 +1,67 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.resource;
+
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.Quote;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.QuoteBatch;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.QuoteCacheStats;
+import net.xeill.elpuig.springbootrestfulconsumingapi.service.QuoteCache;
+import net.xeill.elpuig.springbootrestfulconsumingapi.service.QuoteService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/*
+    API JSON (a diferència de QuoteController, que retorna pàgines HTML).
+ */
+@RestController
+@RequestMapping(QuoteResource.QUOTES_API_PATH)
+public class QuoteResource {
+    public static final String QUOTES_API_PATH = "/api/quotes";
+
+    // Acudits per defecte i màxim per petició
+    public static final int DEFAULT_BATCH_SIZE = 10;
+    public static final int MAX_BATCH_SIZE = 50;
+
+    // Les categories de l'API són paraules en minúscules (dev, food, sport...)
+    private static final Pattern CATEGORY = Pattern.compile("[a-z]{1,32}");
+
+    private final QuoteService quoteService;
+    private final QuoteCache quoteCache;
+
+    // El temps de cada petició ja el mesura Spring a http.server.requests{uri=...}
+    public QuoteResource(QuoteService quoteService, QuoteCache quoteCache) {
+        this.quoteService = quoteService;
+        this.quoteCache = quoteCache;
+    }
+
+    // GET /api/quotes?n={n}&category={categoria} - n acudits diferents de l'API, demanats en paral·lel.
+    // Si s'acaba el temps es retornen els que hi hagi amb complete=false
+    @GetMapping
+    public CompletableFuture<ResponseEntity<QuoteBatch>> getQuotes(@RequestParam(defaultValue = "" + DEFAULT_BATCH_SIZE) int n,
+                                                                   @RequestParam(required = false) String category) {
+        if (category != null && !CATEGORY.matcher(category).matches()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        int size = Math.max(1, Math.min(n, MAX_BATCH_SIZE));
+        return quoteService.getQuotes(size, category)
+                .thenApply(ResponseEntity::ok);
+    }
+
+    // GET /api/quotes/cache - acudits guardats, bytes al disc i hit ratio de la cache
+    @GetMapping("/cache")
+    public QuoteCacheStats getCacheStats() {
+        return quoteCache.stats();
+    }
+
+    // GET /api/quotes/{id} - un acudit que ja s'ha rebut de l'API (de la cache, sense cridar l'API)
+    @GetMapping("/{id}")
+    public ResponseEntity<Quote> getCachedQuote(@PathVariable String id) {
+        Quote quote = quoteCache.get(id);
+        return quote != null ? ResponseEntity.ok(quote) : ResponseEntity.notFound().build();
+    }
+}
@@ -0,0 +1,78 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Circuit breaker de les crides a l'API:
+//   CLOSED     les crides passen. Amb failureThreshold errors seguits passa a OPEN
+//   OPEN       les crides fallen de seguida sense anar a l'API, durant openMs
+//   HALF_OPEN  passat openMs, es deixa passar una sola crida de prova: si va bé torna a CLOSED, si falla a OPEN
+class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // La crida no s'ha fet perquè el circuit és obert
+    static class OpenException extends RuntimeException {
+        OpenException() {
+            super("Quote API circuit is open", null, false, false);
+        }
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // volatile: amb el circuit tancat (el cas normal) tryAcquire no agafa el lock
+    private volatile State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    CircuitBreaker(int failureThreshold, long openMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+    }
+
+    // true si la crida pot anar a l'API. Qui rep true ha de cridar onSuccess o onFailure
+    boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        lock.lock();
+        try {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                return true;
+            }
+            return state == State.CLOSED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onSuccess() {
+        lock.lock();
+        try {
+            failures = 0;
+            state = State.CLOSED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onFailure() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+                failures = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    State state() {
+        return state;
+    }
+}
@@ -0,0 +1,197 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.Quote;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Buffer circular d'acudits que uns fils en segon pla mantenen ple (quotes.prefetch.enabled=true).
+// Les peticions agafen els acudits de memòria i mai esperen l'API:
+//   - primer els acudits que encara no s'han servit (els més antics primer)
+//   - si no en queda cap de nou, es torna a servir un dels últims que hi ha al buffer
+//   - només si el buffer és buit (just en arrencar) retorna null i QuoteService crida l'API directament
+// Quan els acudits nous baixen fins a low-watermark, els fils de refill (parallelism) demanen acudits
+// a l'API fins arribar a high-watermark, i llavors s'esperen fins que tornin a baixar.
+class QuoteBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(QuoteBuffer.class);
+
+    private final Supplier<Quote> upstream;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final int parallelism;
+    private final long retryDelayMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition needsRefill = lock.newCondition();
+    private final Quote[] ring;
+    // Posició on s'escriurà el proper acudit, posicions ocupades i quants dels últims escrits no s'han servit
+    private int head;
+    private int count;
+    private int unread;
+    // Següent acudit ja servit que es repetirà si no n'hi ha de nous
+    private int replay;
+    // Crides a l'API en curs i si s'està omplint (des de low-watermark fins a high-watermark)
+    private int inFlight;
+    private boolean refilling = true;
+    // volatile perquè el refill el pot mirar sense el lock després d'un error
+    private volatile boolean closed;
+
+    private final List<Thread> refillers = new ArrayList<>();
+    private final Counter fresh;
+    private final Counter repeated;
+    private final Counter empty;
+
+    QuoteBuffer(Supplier<Quote> upstream, MeterRegistry registry,
+                int capacity, int lowWatermark, int highWatermark, int parallelism, long retryDelayMs) {
+        if (lowWatermark < 0 || lowWatermark >= highWatermark || highWatermark > capacity || parallelism < 1) {
+            throw new IllegalArgumentException("Invalid quote prefetch settings: capacity=" + capacity
+                    + " low-watermark=" + lowWatermark + " high-watermark=" + highWatermark + " parallelism=" + parallelism);
+        }
+        this.upstream = upstream;
+        this.ring = new Quote[capacity];
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.parallelism = parallelism;
+        this.retryDelayMs = retryDelayMs;
+        fresh = Counter.builder("quotes.buffer.requests").tag("result", "fresh").register(registry);
+        repeated = Counter.builder("quotes.buffer.requests").tag("result", "repeat").register(registry);
+        empty = Counter.builder("quotes.buffer.requests").tag("result", "empty").register(registry);
+        Gauge.builder("quotes.buffer.unread", this, QuoteBuffer::unread).register(registry);
+    }
+
+    void start() {
+        for (int i = 0; i < parallelism; i++) {
+            Thread t = new Thread(this::refill, "quote-refill-" + i);
+            t.setDaemon(true);
+            refillers.add(t);
+            t.start();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            needsRefill.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        // Els fils poden estar esperant l'API o la pausa després d'un error
+        refillers.forEach(Thread::interrupt);
+    }
+
+    // Un acudit de memòria, o null si encara no n'hi ha cap
+    Quote take() {
+        lock.lock();
+        try {
+            if (unread > 0) {
+                Quote quote = ring[Math.floorMod(head - unread, ring.length)];
+                unread--;
+                if (unread <= lowWatermark && !refilling) {
+                    refilling = true;
+                    needsRefill.signalAll();
+                }
+                fresh.increment();
+                return quote;
+            }
+            if (count == 0) {
+                empty.increment();
+                return null;
+            }
+            replay = (replay + 1) % count;
+            repeated.increment();
+            return ring[replay];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Un acudit que encara no s'hagi servit, o null (mai en repeteix cap)
+    Quote takeFresh() {
+        lock.lock();
+        try {
+            return unread > 0 ? take() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int unread() {
+        lock.lock();
+        try {
+            return unread;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill() {
+        while (true) {
+            lock.lock();
+            try {
+                while (!closed && !(refilling && unread + inFlight < highWatermark)) {
+                    needsRefill.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+                inFlight++;
+            } finally {
+                lock.unlock();
+            }
+            Quote quote = null;
+            try {
+                quote = upstream.get();
+            } catch (RuntimeException e) {
+                // En tancar, la crida interrompuda no és cap error de l'API
+                if (!closed) {
+                    log.warn("Cannot prefetch quote: {}", e.toString());
+                }
+            }
+            lock.lock();
+            try {
+                inFlight--;
+                if (quote != null) {
+                    put(quote);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (quote == null && !pause()) {
+                return;
+            }
+        }
+    }
+
+    // Cal tenir el lock
+    private void put(Quote quote) {
+        ring[head] = quote;
+        head = (head + 1) % ring.length;
+        count = Math.min(count + 1, ring.length);
+        unread = Math.min(unread + 1, ring.length);
+        if (unread >= highWatermark) {
+            refilling = false;
+        }
+    }
+
+    // Després d'un error, espera abans de tornar-ho a provar per no insistir a una API que falla.
+    // Retorna false si s'està tancant
+    private boolean pause() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(retryDelayMs);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.Quote;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.QuoteCacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Acudits ja rebuts de l'API, per id, per poder-los servir quan l'API és lenta o no respon.
+//   - Memòria: LRU amb com a molt quotes.cache.memory-entries acudits
+//   - Disc (quotes.cache.disk.enabled=true): tots els acudits a QuoteSegmentStore, que sobreviu als reinicis.
+//     Quan un acudit surt de memòria encara es pot llegir del disc (i torna a memòria)
+@Component
+public class QuoteCache {
+
+    private static final Logger log = LoggerFactory.getLogger(QuoteCache.class);
+
+    private final int memoryEntries;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // LinkedHashMap en ordre d'accés: el primer és el que fa més temps que no es fa servir
+    private final LinkedHashMap<String, Quote> memory;
+    // Ids de memòria en una llista per triar-ne un a l'atzar sense recórrer el mapa
+    private final List<String> memoryIds = new ArrayList<>();
+    private final Map<String, Integer> memoryPositions = new HashMap<>();
+
+    // null si el disc està desactivat
+    private final QuoteSegmentStore disk;
+
+    //   quotes.cache.requests{tier=memory|disk|miss}  lectures de la cache i on s'ha trobat l'acudit
+    //   quotes.cache.entries                          acudits guardats (memòria o disc)
+    //   quotes.cache.memory.entries                   acudits en memòria
+    //   quotes.cache.disk.bytes                       bytes que ocupen els segments al disc
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+
+    public QuoteCache(MeterRegistry registry,
+                      @Value("${quotes.cache.memory-entries:1000}") int memoryEntries,
+                      @Value("${quotes.cache.disk.enabled:false}") boolean diskEnabled,
+                      @Value("${quotes.cache.dir:data/quotes}") String dir,
+                      @Value("${quotes.cache.segment-bytes:4194304}") long segmentBytes,
+                      @Value("${quotes.cache.max-disk-bytes:67108864}") long maxDiskBytes) throws IOException {
+        if (memoryEntries < 1 || segmentBytes < 1 || maxDiskBytes < segmentBytes) {
+            throw new IllegalArgumentException("Invalid quote cache settings: memory-entries=" + memoryEntries
+                    + ", segment-bytes=" + segmentBytes + ", max-disk-bytes=" + maxDiskBytes);
+        }
+        this.memoryEntries = memoryEntries;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true);
+        this.disk = diskEnabled ? new QuoteSegmentStore(Path.of(dir), segmentBytes, maxDiskBytes) : null;
+        memoryHits = Counter.builder("quotes.cache.requests").tag("tier", "memory").register(registry);
+        diskHits = Counter.builder("quotes.cache.requests").tag("tier", "disk").register(registry);
+        misses = Counter.builder("quotes.cache.requests").tag("tier", "miss").register(registry);
+        Gauge.builder("quotes.cache.entries", this, QuoteCache::size).register(registry);
+        Gauge.builder("quotes.cache.memory.entries", this, QuoteCache::memorySize).register(registry);
+        Gauge.builder("quotes.cache.disk.bytes", this, QuoteCache::diskBytes).register(registry);
+    }
+
+    // Guarda l'acudit (si ja hi era, només el marca com a usat)
+    public void put(Quote quote) {
+        if (quote == null || quote.getId() == null) {
+            return;
+        }
+        putMemory(quote);
+        if (disk != null) {
+            try {
+                disk.append(quote);
+            } catch (IOException e) {
+                // Si el disc falla la cache continua en memòria
+                log.warn("Cannot store quote {} on disk: {}", quote.getId(), e.toString());
+            }
+        }
+    }
+
+    // L'acudit amb aquest id (de memòria o del disc), o null
+    public Quote get(String id) {
+        Quote quote;
+        lock.lock();
+        try {
+            quote = memory.get(id);
+        } finally {
+            lock.unlock();
+        }
+        if (quote != null) {
+            memoryHits.increment();
+            return quote;
+        }
+        quote = readDisk(id);
+        if (quote == null) {
+            misses.increment();
+            return null;
+        }
+        diskHits.increment();
+        putMemory(quote);
+        return quote;
+    }
+
+    // Un acudit qualsevol dels guardats (amb disc, d'entre tots els del disc), o null si la cache és buida
+    public Quote random() {
+        String id = disk != null ? disk.randomId() : randomMemoryId();
+        if (id == null) {
+            misses.increment();
+            return null;
+        }
+        return get(id);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int size() {
+        return disk != null ? disk.size() : memorySize();
+    }
+
+    public QuoteCacheStats stats() {
+        long memory = (long) memoryHits.count();
+        long fromDisk = (long) diskHits.count();
+        long missed = (long) misses.count();
+        long total = memory + fromDisk + missed;
+        return new QuoteCacheStats(size(), memorySize(), diskBytes(), memory, fromDisk, missed,
+                total == 0 ? 0 : (double) (memory + fromDisk) / total);
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        if (disk != null) {
+            disk.close();
+        }
+    }
+
+    private int memorySize() {
+        lock.lock();
+        try {
+            return memory.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long diskBytes() {
+        return disk != null ? disk.bytes() : 0;
+    }
+
+    // Si el disc falla es compta com si no hi fos (com a put): la cache no ha de fer fallar la petició
+    private Quote readDisk(String id) {
+        if (disk == null) {
+            return null;
+        }
+        try {
+            return disk.read(id);
+        } catch (IOException e) {
+            log.warn("Cannot read quote {} from disk: {}", id, e.toString());
+            return null;
+        }
+    }
+
+    private void putMemory(Quote quote) {
+        lock.lock();
+        try {
+            if (memory.put(quote.getId(), quote) == null) {
+                memoryPositions.put(quote.getId(), memoryIds.size());
+                memoryIds.add(quote.getId());
+                if (memory.size() > memoryEntries) {
+                    // El primer en ordre d'accés és el menys usat
+                    String eldest = memory.keySet().iterator().next();
+                    memory.remove(eldest);
+                    removeMemoryId(eldest);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String randomMemoryId() {
+        lock.lock();
+        try {
+            return memoryIds.isEmpty() ? null : memoryIds.get(ThreadLocalRandom.current().nextInt(memoryIds.size()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Cal tenir el lock. L'últim id ocupa el forat
+    private void removeMemoryId(String id) {
+        int pos = memoryPositions.remove(id);
+        String last = memoryIds.remove(memoryIds.size() - 1);
+        if (!last.equals(id)) {
+            memoryIds.set(pos, last);
+            memoryPositions.put(last, pos);
+        }
+    }
+}
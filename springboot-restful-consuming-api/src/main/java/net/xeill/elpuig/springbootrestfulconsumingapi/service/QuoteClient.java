@@ -0,0 +1,169 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.Quote;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Client de l'API d'acudits sense bloquejar cap fil: fa servir el HttpClient del JDK amb sendAsync.
+//   - Un sol HttpClient per a tota l'aplicació, així les connexions (keep-alive) es reutilitzen
+//   - quotes.connect-timeout-ms per connectar i quotes.read-timeout-ms per a tota la crida
+//   - Un CircuitBreaker: si l'API falla molts cops seguits, les crides fallen de seguida durant un temps
+//   - fetchShared ajunta les peticions iguals que arriben mentre n'hi ha una en curs (single-flight)
+@Component
+public class QuoteClient {
+
+    // L'API ha respost amb un codi diferent de 200
+    static class UpstreamStatusException extends RuntimeException {
+        final int status;
+
+        UpstreamStatusException(int status) {
+            super("Quote API returned HTTP " + status);
+            this.status = status;
+        }
+    }
+
+    private final HttpClient httpClient;
+    private final URI upstreamUri;
+    private final HttpRequest request;
+    private final Duration readTimeout;
+    private final ObjectReader quoteReader;
+    private final CircuitBreaker breaker;
+
+    // Crida en curs per URI, per a fetchShared
+    private final ConcurrentHashMap<URI, CompletableFuture<Quote>> inFlight = new ConcurrentHashMap<>();
+
+    //   quotes.upstream.requests{outcome=success|failure|rejected}  crides a l'API (rejected: circuit obert)
+    //   quotes.upstream.latency                                      temps de resposta de l'API
+    //   quotes.upstream.coalesced                                    peticions que han fet servir una crida en curs
+    //   quotes.upstream.circuit                                      0 tancat, 1 obert, 2 mig obert
+    private final Counter success;
+    private final Counter failure;
+    private final Counter rejected;
+    private final Counter coalesced;
+    private final Timer latency;
+
+    public QuoteClient(ObjectMapper objectMapper,
+                       MeterRegistry registry,
+                       @Value("${quotes.upstream-url:https://api.chucknorris.io/jokes/random}") String upstreamUrl,
+                       @Value("${quotes.connect-timeout-ms:2000}") long connectTimeoutMs,
+                       @Value("${quotes.read-timeout-ms:5000}") long readTimeoutMs,
+                       @Value("${quotes.circuit.failure-threshold:5}") int failureThreshold,
+                       @Value("${quotes.circuit.open-ms:10000}") long openMs) {
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.upstreamUri = URI.create(upstreamUrl);
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.request = request(upstreamUri);
+        this.quoteReader = objectMapper.readerFor(Quote.class);
+        this.breaker = new CircuitBreaker(failureThreshold, openMs);
+        success = Counter.builder("quotes.upstream.requests").tag("outcome", "success").register(registry);
+        failure = Counter.builder("quotes.upstream.requests").tag("outcome", "failure").register(registry);
+        rejected = Counter.builder("quotes.upstream.requests").tag("outcome", "rejected").register(registry);
+        coalesced = Counter.builder("quotes.upstream.coalesced").register(registry);
+        latency = Timer.builder("quotes.upstream.latency").register(registry);
+        Gauge.builder("quotes.upstream.circuit", breaker, b -> b.state().ordinal()).register(registry);
+    }
+
+    // Una crida nova a l'API (cada crida porta un acudit diferent)
+    public CompletableFuture<Quote> fetch() {
+        return send(request);
+    }
+
+    // Un acudit d'una categoria (?category=dev). Sense categoria és el mateix que fetch()
+    public CompletableFuture<Quote> fetch(String category) {
+        if (category == null) {
+            return fetch();
+        }
+        String separator = upstreamUri.getRawQuery() == null ? "?" : "&";
+        return send(request(URI.create(upstreamUri + separator + "category=" + URLEncoder.encode(category, StandardCharsets.UTF_8))));
+    }
+
+    // Si ja hi ha una crida en curs, retorna el seu resultat en lloc de fer-ne una altra.
+    // La crida es treu del mapa abans de completar-se: qui arriba després en fa una de nova
+    public CompletableFuture<Quote> fetchShared() {
+        CompletableFuture<Quote> mine = new CompletableFuture<>();
+        CompletableFuture<Quote> running = inFlight.putIfAbsent(upstreamUri, mine);
+        if (running != null) {
+            coalesced.increment();
+            return running.copy();
+        }
+        send(request).whenComplete((quote, e) -> {
+            inFlight.remove(upstreamUri, mine);
+            if (e != null) {
+                mine.completeExceptionally(e);
+            } else {
+                mine.complete(quote);
+            }
+        });
+        return mine.copy();
+    }
+
+    private CompletableFuture<Quote> send(HttpRequest request) {
+        if (!breaker.tryAcquire()) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(new CircuitBreaker.OpenException());
+        }
+        Timer.Sample sample = Timer.start();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(this::parse)
+                // request.timeout només compta fins a les capçaleres: orTimeout limita també el cos
+                .orTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((quote, e) -> {
+                    sample.stop(latency);
+                    if (e == null) {
+                        success.increment();
+                        breaker.onSuccess();
+                    } else {
+                        failure.increment();
+                        // Un 4xx (per exemple una categoria que no existeix) no vol dir que l'API estigui malament
+                        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                        if (cause instanceof UpstreamStatusException status && status.status < 500) {
+                            breaker.onSuccess();
+                        } else {
+                            breaker.onFailure();
+                        }
+                    }
+                });
+    }
+
+    private Quote parse(HttpResponse<byte[]> response) {
+        if (response.statusCode() != 200) {
+            throw new UpstreamStatusException(response.statusCode());
+        }
+        try {
+            return quoteReader.readValue(response.body());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private HttpRequest request(URI uri) {
+        return HttpRequest.newBuilder(uri)
+                .timeout(readTimeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+    }
+}
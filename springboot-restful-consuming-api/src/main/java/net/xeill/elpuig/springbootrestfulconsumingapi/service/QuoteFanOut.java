@@ -0,0 +1,149 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.service;
+
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.Quote;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.QuoteBatch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Demana n acudits diferents a l'API amb com a molt "parallelism" crides alhora.
+// Les crides són asíncrones (fetcher, que passa per QuoteClient): cap fil espera, i quan en torna una se'n llança una altra.
+// Els acudits repetits (mateix id) es descarten i es torna a demanar, fins a MAX_ATTEMPTS_PER_QUOTE crides per acudit.
+// Quan passa el deadline es respon amb els que hi hagi, encara que no n'hi hagi n.
+// Les crides es llancen amb el lock agafat però onQuote s'hi enganxa després de deixar-lo (watch):
+// així una crida que ja ve acabada (circuit obert) no torna a entrar a launchMore ni completa el resultat amb el lock.
+class QuoteFanOut {
+
+    // Amb una categoria petita l'API repeteix molts acudits: no insistim indefinidament
+    private static final int MAX_ATTEMPTS_PER_QUOTE = 3;
+
+    private final Function<String, CompletableFuture<Quote>> fetcher;
+    private final String category;
+    private final int n;
+    private final int parallelism;
+    private final int maxAttempts;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Quote> quotes = new LinkedHashMap<>();
+    private int started;
+    private int running;
+    private boolean done;
+    private final CompletableFuture<QuoteBatch> result = new CompletableFuture<>();
+
+    QuoteFanOut(Function<String, CompletableFuture<Quote>> fetcher, String category, int n, int parallelism) {
+        this.fetcher = fetcher;
+        this.category = category;
+        this.n = n;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxAttempts = n * MAX_ATTEMPTS_PER_QUOTE;
+    }
+
+    // Un acudit que ja tenim (per exemple del buffer de prefetch). Retorna false si ja n'hi ha prou
+    boolean add(Quote quote) {
+        lock.lock();
+        try {
+            if (quotes.size() >= n) {
+                return false;
+            }
+            quotes.putIfAbsent(quote.getId(), quote);
+            return quotes.size() < n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    CompletableFuture<QuoteBatch> start(long deadlineMs) {
+        List<CompletableFuture<Quote>> calls = new ArrayList<>();
+        QuoteBatch batch;
+        lock.lock();
+        try {
+            batch = launchMore(calls);
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            result.complete(batch);
+        } else {
+            CompletableFuture.delayedExecutor(deadlineMs, TimeUnit.MILLISECONDS).execute(this::expire);
+        }
+        watch(calls);
+        return result;
+    }
+
+    // Enganxa onQuote a les crides, sense el lock. Les que ja han acabat es processen en aquest bucle en lloc
+    // de niar una crida dins l'altra: amb el circuit obert, els n * MAX_ATTEMPTS_PER_QUOTE intents no fan créixer la pila
+    private void watch(List<CompletableFuture<Quote>> calls) {
+        ArrayDeque<CompletableFuture<Quote>> pending = new ArrayDeque<>(calls);
+        while (!pending.isEmpty()) {
+            CompletableFuture<Quote> call = pending.poll();
+            if (call.isDone()) {
+                pending.addAll(onQuote(call.exceptionally(error -> null).join()));
+            } else {
+                call.whenComplete((quote, error) -> watch(onQuote(error == null ? quote : null)));
+            }
+        }
+    }
+
+    // Una crida ha acabat (quote és null si ha fallat). Retorna les crides noves que s'han llançat.
+    // El resultat es completa fora del lock: qui l'espera (la resposta HTTP) no bloqueja les altres crides
+    private List<CompletableFuture<Quote>> onQuote(Quote quote) {
+        List<CompletableFuture<Quote>> calls = new ArrayList<>();
+        QuoteBatch batch;
+        lock.lock();
+        try {
+            running--;
+            if (done) {
+                return calls;
+            }
+            if (quote != null && quote.getId() != null) {
+                quotes.putIfAbsent(quote.getId(), quote);
+            }
+            batch = launchMore(calls);
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            result.complete(batch);
+        }
+        return calls;
+    }
+
+    // Cal tenir el lock. Llança crides fins a omplir "parallelism" i les afegeix a calls (qui les vigila és watch);
+    // si ja no en cal cap més retorna el resultat
+    private QuoteBatch launchMore(List<CompletableFuture<Quote>> calls) {
+        while (!done && running < parallelism && started < maxAttempts && quotes.size() + running < n) {
+            started++;
+            running++;
+            calls.add(fetcher.apply(category));
+        }
+        return !done && (quotes.size() >= n || running == 0) ? finish() : null;
+    }
+
+    // Quan passa el deadline: els acudits que hi hagi, encara que en faltin
+    private void expire() {
+        QuoteBatch batch = null;
+        lock.lock();
+        try {
+            if (!done) {
+                batch = finish();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            result.complete(batch);
+        }
+    }
+
+    // Cal tenir el lock
+    private QuoteBatch finish() {
+        done = true;
+        return new QuoteBatch(new ArrayList<>(quotes.values()), n, quotes.size() == n);
+    }
+}
@@ -0,0 +1,396 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.service;
+
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.Quote;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Acudits guardats al disc en segments de només afegir (quotes-N.seg).
+// Cada registre és: [int longitud][int crc32][payload], i el payload és id, value, url i icon_url
+// com a [int longitud o -1 si és null][bytes UTF-8].
+// Quan un segment arriba a segmentBytes es tanca i s'hi escriu al costat un índex compacte (quotes-N.idx)
+// amb [int longitud][id][int posició] per cada acudit: en arrencar es llegeixen els .idx dels segments tancats
+// i només cal recórrer el segment actiu. Si el total passa de maxBytes s'esborren els segments més antics.
+class QuoteSegmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(QuoteSegmentStore.class);
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("quotes-(\\d+)\\.seg");
+    private static final int HEADER = 8;
+    // Un registre més gran que això vol dir que el fitxer està malmès
+    private static final int MAX_RECORD = 1024 * 1024;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Segments oberts (per llegir) i mida de cadascun; l'últim és on s'afegeix
+    private final TreeMap<Long, FileChannel> segments = new TreeMap<>();
+    private final Map<Long, Long> sizes = new HashMap<>();
+    private final Map<Long, List<String>> segmentIds = new HashMap<>();
+    private long active;
+    private long totalBytes;
+
+    // Índex: id -> (segment << 32) | posició, i els ids en una llista per triar-ne un a l'atzar
+    private final Map<String, Long> locations = new HashMap<>();
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    QuoteSegmentStore(Path dir, long segmentBytes, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+        List<Long> numbers = list();
+        for (int i = 0; i < numbers.size(); i++) {
+            long n = numbers.get(i);
+            boolean last = i == numbers.size() - 1;
+            Map<String, Integer> entries = last ? null : readIndex(n);
+            FileChannel channel = FileChannel.open(segmentFile(n), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size;
+            if (entries == null) {
+                // Segment actiu (o sense .idx): es recorre i es talla la cua si està incompleta
+                entries = new HashMap<>();
+                size = scan(channel, entries);
+                channel.truncate(size);
+                if (!last) {
+                    writeIndex(n, entries);
+                }
+            } else {
+                size = channel.size();
+            }
+            open(n, channel, size);
+            entries.forEach((id, offset) -> index(id, n, offset));
+        }
+        if (segments.isEmpty()) {
+            open(1, FileChannel.open(segmentFile(1), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE), 0);
+        }
+        log.info("Loaded {} cached quotes from {} in {} ms", ids.size(), dir,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return locations.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Afegeix l'acudit al segment actiu si no hi és. Retorna false si ja hi era
+    boolean append(Quote quote) throws IOException {
+        byte[] record = encode(quote);
+        lock.writeLock().lock();
+        try {
+            if (locations.containsKey(quote.getId())) {
+                return false;
+            }
+            long size = sizes.get(active);
+            if (size > 0 && size + record.length > segmentBytes) {
+                roll();
+                size = 0;
+            }
+            FileChannel channel = segments.get(active);
+            ByteBuffer buf = ByteBuffer.wrap(record);
+            long position = size;
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+            sizes.put(active, position);
+            totalBytes += record.length;
+            index(quote.getId(), active, (int) size);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // L'acudit amb aquest id, o null
+    Quote read(String id) throws IOException {
+        lock.readLock().lock();
+        try {
+            Long location = locations.get(id);
+            if (location == null) {
+                return null;
+            }
+            FileChannel channel = segments.get(location >>> 32);
+            long offset = location & 0xFFFFFFFFL;
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            readFully(channel, header, offset);
+            ByteBuffer payload = ByteBuffer.allocate(header.getInt(0));
+            readFully(channel, payload, offset + HEADER);
+            return decode(payload.flip());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Un id qualsevol dels que hi ha guardats, o null si no n'hi ha cap
+    String randomId() {
+        lock.readLock().lock();
+        try {
+            return ids.isEmpty() ? null : ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Bytes que ocupen els segments (sense els .idx)
+    long bytes() {
+        lock.readLock().lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (FileChannel channel : segments.values()) {
+                channel.force(false);
+                channel.close();
+            }
+            segments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Cal tenir el lock d'escriptura. Tanca el segment actiu (amb el seu .idx) i n'obre un de nou
+    private void roll() throws IOException {
+        FileChannel sealed = segments.get(active);
+        sealed.force(false);
+        Map<String, Integer> entries = new HashMap<>();
+        for (String id : segmentIds.get(active)) {
+            entries.put(id, (int) (locations.get(id) & 0xFFFFFFFFL));
+        }
+        writeIndex(active, entries);
+        long next = active + 1;
+        open(next, FileChannel.open(segmentFile(next), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE), 0);
+        while (totalBytes > maxBytes && segments.size() > 1) {
+            dropOldest();
+        }
+    }
+
+    private void dropOldest() throws IOException {
+        long oldest = segments.firstKey();
+        segments.remove(oldest).close();
+        totalBytes -= sizes.remove(oldest);
+        for (String id : segmentIds.remove(oldest)) {
+            locations.remove(id);
+            // Treure de la llista sense moure-la: l'últim id ocupa el forat
+            int pos = positions.remove(id);
+            String last = ids.remove(ids.size() - 1);
+            if (!last.equals(id)) {
+                ids.set(pos, last);
+                positions.put(last, pos);
+            }
+        }
+        Files.deleteIfExists(segmentFile(oldest));
+        Files.deleteIfExists(indexFile(oldest));
+    }
+
+    private void open(long n, FileChannel channel, long size) {
+        segments.put(n, channel);
+        sizes.put(n, size);
+        segmentIds.put(n, new ArrayList<>());
+        totalBytes += size;
+        active = n;
+    }
+
+    private void index(String id, long segment, int offset) {
+        if (locations.put(id, (segment << 32) | offset) == null) {
+            positions.put(id, ids.size());
+            ids.add(id);
+            segmentIds.get(segment).add(id);
+        }
+    }
+
+    // Recorre un segment i omple "entries" amb la posició de cada acudit.
+    // Retorna fins on el segment és correcte (la resta és una escriptura tallada)
+    private static long scan(FileChannel channel, Map<String, Integer> entries) throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (offset + HEADER <= size) {
+            header.clear();
+            readFully(channel, header, offset);
+            int length = header.getInt(0);
+            if (length <= 0 || length > MAX_RECORD || offset + HEADER + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, offset + HEADER);
+            if (crc(payload.array(), 0, length) != header.getInt(4)) {
+                break;
+            }
+            entries.putIfAbsent(decode(payload.flip()).getId(), (int) offset);
+            offset += HEADER + length;
+        }
+        return offset;
+    }
+
+    private Map<String, Integer> readIndex(long n) throws IOException {
+        Map<String, Integer> entries = new HashMap<>();
+        try (InputStream in = Files.newInputStream(indexFile(n));
+             DataInputStream data = new DataInputStream(new java.io.BufferedInputStream(in, 64 * 1024))) {
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] id = new byte[data.readInt()];
+                data.readFully(id);
+                entries.put(new String(id, StandardCharsets.UTF_8), data.readInt());
+            }
+            return entries;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("Cannot read {}, scanning the segment instead: {}", indexFile(n), e.toString());
+            return null;
+        }
+    }
+
+    // S'escriu en un .tmp i es renombra: un .idx sempre és sencer
+    private void writeIndex(long n, Map<String, Integer> entries) throws IOException {
+        Path tmp = dir.resolve("quotes-" + n + ".idx.tmp");
+        try (OutputStream out = Files.newOutputStream(tmp);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024))) {
+            data.writeInt(entries.size());
+            for (Map.Entry<String, Integer> entry : entries.entrySet()) {
+                byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                data.writeInt(id.length);
+                data.write(id);
+                data.writeInt(entry.getValue());
+            }
+        }
+        Files.move(tmp, indexFile(n), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static byte[] encode(Quote quote) {
+        byte[] id = bytes(quote.getId());
+        byte[] value = bytes(quote.getValue());
+        byte[] url = bytes(quote.getUrl());
+        byte[] iconUrl = bytes(quote.getIcon_url());
+        int payload = 16 + length(id) + length(value) + length(url) + length(iconUrl);
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + payload);
+        buf.putInt(payload).putInt(0);
+        putString(buf, id);
+        putString(buf, value);
+        putString(buf, url);
+        putString(buf, iconUrl);
+        byte[] record = buf.array();
+        buf.putInt(4, crc(record, HEADER, payload));
+        return record;
+    }
+
+    static Quote decode(ByteBuffer payload) {
+        Quote quote = new Quote();
+        quote.setId(getString(payload));
+        quote.setValue(getString(payload));
+        quote.setUrl(getString(payload));
+        quote.setIcon_url(getString(payload));
+        return quote;
+    }
+
+    private List<Long> list() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                Matcher m = SEGMENT_FILE.matcher(file.getFileName().toString());
+                if (m.matches()) {
+                    numbers.add(Long.parseLong(m.group(1)));
+                }
+            });
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private Path segmentFile(long n) {
+        return dir.resolve("quotes-" + n + ".seg");
+    }
+
+    private Path indexFile(long n) {
+        return dir.resolve("quotes-" + n + ".idx");
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + buf.position());
+            if (n < 0) {
+                throw new IOException("Unexpected end of quote segment");
+            }
+        }
+    }
+
+    private static int crc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] b) {
+        return b == null ? 0 : b.length;
+    }
+
+    private static void putString(ByteBuffer buf, byte[] b) {
+        if (b == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(b.length).put(b);
+        }
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String s = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return s;
+    }
+}
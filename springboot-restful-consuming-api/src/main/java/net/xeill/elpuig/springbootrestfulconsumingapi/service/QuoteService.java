@@ -1,15 +1,176 @@
 package net.xeill.elpuig.springbootrestfulconsumingapi.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import net.xeill.elpuig.springbootrestfulconsumingapi.model.Quote;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.QuoteBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// @Lazy(false): es crea en arrencar encara que spring.main.lazy-initialization=true (perfil fast-start),
+// perquè el prefetch i la cache del disc han d'estar a punt abans de la primera petició
 @Service
+@Lazy(false)
 public class QuoteService {
 
-    RestTemplate restTemplate = new RestTemplate();
+    private static final Logger log = LoggerFactory.getLogger(QuoteService.class);
+
+    // Acudit que es mostra si l'API falla i encara no n'hem rebut cap
+    private static final Quote FALLBACK = fallbackQuote();
+
+    // Les crides a l'API passen per QuoteClient (asíncron, amb timeouts i circuit breaker)
+    private final QuoteClient client;
+
+    // Tots els acudits rebuts es guarden aquí, per servir-los si l'API és lenta o no respon
+    private final QuoteCache cache;
+    // Si l'API no ha respost en aquest temps i la cache té acudits, se'n serveix un de la cache (0 = esperar sempre)
+    private final long cacheSlowMs;
+
+    // Mètriques creades un sol cop al constructor
+    //   quotes.service{method=getQuote}  temps de getQuote, fins que l'acudit és a punt
+    //   quotes.service{method=getQuotes} temps de getQuotes, fins que el lot és a punt
+    //   quotes.fallback                  peticions que han rebut l'acudit de reserva perquè l'API ha fallat
+    //   quotes.cache.served{reason=slow|failure}  peticions servides des de la cache perquè l'API era lenta o ha fallat
+    private final Timer getQuoteTimer;
+    private final Timer getQuotesTimer;
+    private final Counter fallbacks;
+    private final Counter servedSlow;
+    private final Counter servedFailure;
+
+    // GET /api/quotes: crides alhora a l'API per cada lot i temps màxim per respondre
+    private final int batchParallelism;
+    private final long batchDeadlineMs;
+
+    // Amb quotes.prefetch.enabled=true, buffer d'acudits que s'omple en segon pla (null si està desactivat)
+    private final QuoteBuffer buffer;
+
+    // Últim acudit rebut de l'API, per fer-lo servir de reserva
+    private volatile Quote lastQuote;
+
+    public QuoteService(QuoteClient client,
+                        QuoteCache cache,
+                        MeterRegistry registry,
+                        @Value("${quotes.prefetch.enabled:false}") boolean prefetch,
+                        @Value("${quotes.prefetch.capacity:64}") int capacity,
+                        @Value("${quotes.prefetch.low-watermark:16}") int lowWatermark,
+                        @Value("${quotes.prefetch.high-watermark:48}") int highWatermark,
+                        @Value("${quotes.prefetch.parallelism:4}") int parallelism,
+                        @Value("${quotes.prefetch.retry-delay-ms:1000}") long retryDelayMs,
+                        @Value("${quotes.batch.parallelism:8}") int batchParallelism,
+                        @Value("${quotes.batch.deadline-ms:3000}") long batchDeadlineMs,
+                        @Value("${quotes.cache.slow-ms:1000}") long cacheSlowMs) {
+        this.client = client;
+        this.cache = cache;
+        this.cacheSlowMs = cacheSlowMs;
+        this.batchParallelism = batchParallelism;
+        this.batchDeadlineMs = batchDeadlineMs;
+        this.getQuoteTimer = Timer.builder("quotes.service").tag("method", "getQuote").register(registry);
+        this.getQuotesTimer = Timer.builder("quotes.service").tag("method", "getQuotes").register(registry);
+        this.fallbacks = Counter.builder("quotes.fallback").register(registry);
+        this.servedSlow = Counter.builder("quotes.cache.served").tag("reason", "slow").register(registry);
+        this.servedFailure = Counter.builder("quotes.cache.served").tag("reason", "failure").register(registry);
+        // Els fils de refill ja són en segon pla: poden esperar la crida (join)
+        this.buffer = prefetch
+                ? new QuoteBuffer(() -> remember(client.fetch().join()), registry,
+                capacity, lowWatermark, highWatermark, parallelism, retryDelayMs)
+                : null;
+    }
+
+    @PostConstruct
+    void startPrefetch() {
+        if (buffer != null) {
+            buffer.start();
+        }
+    }
+
+    @PreDestroy
+    void stopPrefetch() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    // Amb el prefetch activat l'acudit surt del buffer; si no, es demana a l'API sense bloquejar el fil.
+    // Les peticions que arriben mentre hi ha una crida en curs en comparteixen el resultat.
+    // Si l'API tarda més de quotes.cache.slow-ms es respon amb un acudit de la cache (la crida continua i el guarda).
+    // Si l'API falla (o el circuit és obert) es retorna un acudit de la cache, l'últim rebut, o FALLBACK
+    public CompletableFuture<Quote> getQuote() {
+        Timer.Sample sample = Timer.start();
+        Quote buffered = buffer == null ? null : buffer.take();
+        CompletableFuture<Quote> quote = buffered != null
+                ? CompletableFuture.completedFuture(buffered)
+                : orCachedWhenSlow(client.fetchShared().handle((q, e) -> e == null ? remember(q) : fallback(e)));
+        return quote.whenComplete((q, e) -> sample.stop(getQuoteTimer));
+    }
+
+    // n acudits diferents (de la categoria, si n'hi ha), amb com a molt quotes.batch.parallelism crides alhora.
+    // Sense categoria es fan servir primer els acudits nous del buffer de prefetch.
+    // Passat quotes.batch.deadline-ms es retornen els que hi hagi
+    public CompletableFuture<QuoteBatch> getQuotes(int n, String category) {
+        Timer.Sample sample = Timer.start();
+        QuoteFanOut fanOut = new QuoteFanOut(c -> client.fetch(c).thenApply(this::remember), category, n, batchParallelism);
+        if (buffer != null && category == null) {
+            Quote quote;
+            while ((quote = buffer.takeFresh()) != null && fanOut.add(quote)) {
+                // el buffer omple el lot mentre en quedin de nous
+            }
+        }
+        return fanOut.start(batchDeadlineMs)
+                .whenComplete((batch, e) -> sample.stop(getQuotesTimer));
+    }
+
+    // El primer que acabi: la resposta de l'API o, passat cacheSlowMs, un acudit de la cache.
+    // Amb la cache buida no té sentit esperar el temporitzador
+    private CompletableFuture<Quote> orCachedWhenSlow(CompletableFuture<Quote> fetched) {
+        if (cacheSlowMs <= 0 || fetched.isDone() || cache.isEmpty()) {
+            return fetched;
+        }
+        CompletableFuture<Quote> cached = new CompletableFuture<>();
+        CompletableFuture.delayedExecutor(cacheSlowMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (!fetched.isDone()) {
+                Quote quote = cache.random();
+                if (quote != null) {
+                    servedSlow.increment();
+                    cached.complete(quote);
+                }
+            }
+        });
+        return fetched.applyToEither(cached, q -> q);
+    }
+
+    private Quote remember(Quote quote) {
+        lastQuote = quote;
+        cache.put(quote);
+        return quote;
+    }
+
+    private Quote fallback(Throwable error) {
+        log.debug("Serving a cached or fallback quote: {}", error.toString());
+        Quote cached = cache.random();
+        if (cached != null) {
+            servedFailure.increment();
+            return cached;
+        }
+        fallbacks.increment();
+        Quote last = lastQuote;
+        return last != null ? last : FALLBACK;
+    }
 
-    public Quote getQuote() {
-        return restTemplate.getForObject("https://api.chucknorris.io/jokes/random", Quote.class);
+    private static Quote fallbackQuote() {
+        Quote quote = new Quote();
+        quote.setId("fallback");
+        quote.setValue("Chuck Norris doesn't need the API. The API needs Chuck Norris.");
+        quote.setUrl("https://api.chucknorris.io");
+        quote.setIcon_url("https://api.chucknorris.io/img/avatar/chuck-norris.png");
+        return quote;
     }
 }
@@ -0,0 +1,88 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Amb openMs = 0 el circuit passa a HALF_OPEN a la primera crida després d'obrir-se;
+// amb un minut, durant el test no hi passa mai
+class CircuitBreakerTest {
+
+    private static final long NEVER = 60_000;
+
+    private static CircuitBreaker open(long openMs) {
+        CircuitBreaker breaker = new CircuitBreaker(3, openMs);
+        for (int i = 0; i < 3; i++) {
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onFailure();
+        }
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        return breaker;
+    }
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, NEVER);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void successResetsTheFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker(3, NEVER);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        // Només 2 errors seguits des de l'últim èxit
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void rejectsCallsWhileOpen() {
+        CircuitBreaker breaker = open(NEVER);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(breaker.tryAcquire()).isFalse();
+        }
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void letsASingleProbeThroughAfterOpenMs() {
+        CircuitBreaker breaker = open(0);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        // Mentre la crida de prova no acaba, les altres es rebutgen
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void successfulProbeClosesTheCircuit() {
+        CircuitBreaker breaker = open(0);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onSuccess();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void failedProbeReopensTheCircuit() {
+        CircuitBreaker breaker = open(0);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        // Un sol error n'hi ha prou, encara que el llindar sigui 3
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+}
@@ -0,0 +1,169 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.Quote;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// L'API és un comptador: la crida número i retorna l'acudit "q<i>" (o falla, si el test ho demana).
+// Un sol fil de refill, així les crides a l'API es fan d'una en una i les comptes són exactes
+class QuoteBufferTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+    private QuoteBuffer buffer;
+
+    @AfterEach
+    void close() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    private static Quote quote(int n) {
+        Quote quote = new Quote();
+        quote.setId("q" + n);
+        quote.setValue("Joke " + n);
+        return quote;
+    }
+
+    // Les "failing" primeres crides fallen; a partir de "limit" crides també
+    private Supplier<Quote> upstream(int failing, int limit) {
+        return () -> {
+            int call = calls.incrementAndGet();
+            if (call <= failing || call > limit) {
+                throw new IllegalStateException("Quote API is down");
+            }
+            return quote(call);
+        };
+    }
+
+    private QuoteBuffer start(Supplier<Quote> upstream, int capacity, int low, int high) {
+        buffer = new QuoteBuffer(upstream, registry, capacity, low, high, 1, 10);
+        buffer.start();
+        return buffer;
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as(what).isLessThan(deadline);
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+
+    private double requests(String result) {
+        return registry.get("quotes.buffer.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    void isEmptyBeforeTheFirstQuote() {
+        buffer = new QuoteBuffer(upstream(0, Integer.MAX_VALUE), registry, 8, 2, 6, 1, 10);
+
+        assertThat(buffer.take()).isNull();
+        assertThat(buffer.takeFresh()).isNull();
+        assertThat(requests("empty")).isEqualTo(1);
+    }
+
+    @Test
+    void fillsUpToTheHighWatermarkAndServesTheOldestFirst() throws InterruptedException {
+        start(upstream(0, Integer.MAX_VALUE), 8, 2, 6);
+
+        await("buffer full", () -> buffer.unread() == 6);
+        TimeUnit.MILLISECONDS.sleep(50);
+        // Arribat a high-watermark ja no demana més acudits
+        assertThat(calls.get()).isEqualTo(6);
+        assertThat(buffer.take().getId()).isEqualTo("q1");
+        assertThat(buffer.take().getId()).isEqualTo("q2");
+        assertThat(buffer.takeFresh().getId()).isEqualTo("q3");
+        assertThat(buffer.unread()).isEqualTo(3);
+        assertThat(requests("fresh")).isEqualTo(3);
+    }
+
+    @Test
+    void refillsOnlyBelowTheLowWatermark() throws InterruptedException {
+        start(upstream(0, Integer.MAX_VALUE), 8, 2, 6);
+        await("buffer full", () -> buffer.unread() == 6);
+
+        for (int i = 1; i <= 3; i++) {
+            buffer.take();
+        }
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertThat(calls.get()).isEqualTo(6);
+
+        // Amb 2 acudits nous (low-watermark) torna a omplir fins a 6
+        assertThat(buffer.take().getId()).isEqualTo("q4");
+        await("buffer refilled", () -> buffer.unread() == 6);
+        assertThat(calls.get()).isEqualTo(10);
+        assertThat(buffer.take().getId()).isEqualTo("q5");
+    }
+
+    @Test
+    void repeatsServedQuotesWhenNoneIsFresh() throws InterruptedException {
+        // Després de 2 acudits l'API falla: el buffer es queda amb q1 i q2
+        start(upstream(0, 2), 4, 0, 2);
+        await("buffer full", () -> buffer.unread() == 2);
+
+        assertThat(buffer.take().getId()).isEqualTo("q1");
+        assertThat(buffer.take().getId()).isEqualTo("q2");
+        assertThat(buffer.takeFresh()).isNull();
+        for (int i = 0; i < 4; i++) {
+            assertThat(buffer.take().getId()).isIn("q1", "q2");
+        }
+        assertThat(requests("fresh")).isEqualTo(2);
+        assertThat(requests("repeat")).isEqualTo(4);
+        assertThat(requests("empty")).isZero();
+    }
+
+    @Test
+    void retriesAfterUpstreamErrors() throws InterruptedException {
+        start(upstream(3, Integer.MAX_VALUE), 8, 2, 6);
+
+        await("buffer full", () -> buffer.unread() == 6);
+        assertThat(buffer.take().getId()).isEqualTo("q4");
+    }
+
+    @Test
+    void overwritesTheOldestWhenFull() throws InterruptedException {
+        // high-watermark = capacity: el buffer s'omple sencer, i en tornar a omplir trepitja els ja servits
+        start(upstream(0, Integer.MAX_VALUE), 4, 1, 4);
+        await("buffer full", () -> buffer.unread() == 4);
+
+        for (int i = 1; i <= 3; i++) {
+            assertThat(buffer.take().getId()).isEqualTo("q" + i);
+        }
+        await("buffer refilled", () -> buffer.unread() == 4);
+        assertThat(buffer.take().getId()).isEqualTo("q4");
+        assertThat(buffer.take().getId()).isEqualTo("q5");
+    }
+
+    @Test
+    void closeStopsTheRefillThreads() throws InterruptedException {
+        // L'API sempre falla: el fil de refill torna a provar cada 10 ms fins que es tanca
+        start(upstream(Integer.MAX_VALUE, Integer.MAX_VALUE), 8, 2, 6);
+        await("first attempt", () -> calls.get() > 0);
+
+        buffer.close();
+        TimeUnit.MILLISECONDS.sleep(20);
+        int stopped = calls.get();
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertThat(calls.get()).isEqualTo(stopped);
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        Supplier<Quote> upstream = upstream(0, Integer.MAX_VALUE);
+        assertThatThrownBy(() -> new QuoteBuffer(upstream, registry, 8, 6, 6, 1, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new QuoteBuffer(upstream, registry, 8, 2, 9, 1, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new QuoteBuffer(upstream, registry, 8, -1, 6, 1, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new QuoteBuffer(upstream, registry, 8, 2, 6, 0, 10)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
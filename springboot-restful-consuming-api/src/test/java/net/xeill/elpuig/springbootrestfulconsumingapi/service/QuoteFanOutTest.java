@@ -0,0 +1,158 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.service;
+
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.Quote;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.QuoteBatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// El fetcher fa de QuoteClient: retorna futures ja acabats (com amb el circuit obert)
+// o futures que el test completa quan vol, per controlar l'ordre de les respostes
+class QuoteFanOutTest {
+
+    private static final long NO_DEADLINE = 60_000;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private static Quote quote(String id) {
+        Quote quote = new Quote();
+        quote.setId(id);
+        quote.setValue("Joke " + id);
+        return quote;
+    }
+
+    private static List<String> ids(QuoteBatch batch) {
+        return batch.quotes().stream().map(Quote::getId).toList();
+    }
+
+    // Cada crida torna l'acudit següent de la llista, ja acabat
+    private Function<String, CompletableFuture<Quote>> replying(String... ids) {
+        return category -> CompletableFuture.completedFuture(quote(ids[calls.getAndIncrement() % ids.length]));
+    }
+
+    private Function<String, CompletableFuture<Quote>> failing() {
+        return category -> {
+            calls.incrementAndGet();
+            return CompletableFuture.failedFuture(new CircuitBreaker.OpenException());
+        };
+    }
+
+    @Test
+    void collectsDistinctQuotes() {
+        QuoteFanOut fanOut = new QuoteFanOut(replying("a", "a", "b", "a", "c"), "dev", 3, 2);
+
+        QuoteBatch batch = fanOut.start(NO_DEADLINE).join();
+        assertThat(ids(batch)).containsExactly("a", "b", "c");
+        assertThat(batch.requested()).isEqualTo(3);
+        assertThat(batch.complete()).isTrue();
+        assertThat(calls.get()).isEqualTo(5);
+    }
+
+    @Test
+    void givesUpAfterMaxAttemptsPerQuote() {
+        // L'API només té 2 acudits: 3 intents per acudit demanat i es respon amb el que hi ha
+        QuoteFanOut fanOut = new QuoteFanOut(replying("a", "b"), "dev", 4, 2);
+
+        QuoteBatch batch = fanOut.start(NO_DEADLINE).join();
+        assertThat(ids(batch)).containsExactlyInAnyOrder("a", "b");
+        assertThat(batch.complete()).isFalse();
+        assertThat(calls.get()).isEqualTo(12);
+    }
+
+    @Test
+    void prefetchedQuotesAreNotFetchedAgain() {
+        QuoteFanOut fanOut = new QuoteFanOut(replying("c", "d"), "dev", 3, 2);
+
+        assertThat(fanOut.add(quote("a"))).isTrue();
+        assertThat(fanOut.add(quote("a"))).isTrue();
+        assertThat(fanOut.add(quote("b"))).isTrue();
+        QuoteBatch batch = fanOut.start(NO_DEADLINE).join();
+        assertThat(ids(batch)).containsExactly("a", "b", "c");
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void addReportsWhenThereAreEnough() {
+        QuoteFanOut fanOut = new QuoteFanOut(replying("x"), "dev", 2, 2);
+
+        assertThat(fanOut.add(quote("a"))).isTrue();
+        assertThat(fanOut.add(quote("b"))).isFalse();
+        assertThat(fanOut.add(quote("c"))).isFalse();
+        // Ja n'hi ha prou: no cal cap crida
+        assertThat(ids(fanOut.start(NO_DEADLINE).join())).containsExactly("a", "b");
+        assertThat(calls.get()).isZero();
+    }
+
+    // Abans, amb el circuit obert cada future ja acabat tornava a entrar a launchMore des de whenComplete:
+    // una crida niada per intent, i el resultat es completava amb el lock agafat
+    @Test
+    void failedCallsDoNotNestWithAnOpenCircuit() {
+        int n = 20_000;
+        QuoteFanOut fanOut = new QuoteFanOut(failing(), "dev", n, 1);
+
+        QuoteBatch batch = fanOut.start(NO_DEADLINE).join();
+        assertThat(batch.quotes()).isEmpty();
+        assertThat(batch.complete()).isFalse();
+        assertThat(calls.get()).isEqualTo(3 * n);
+    }
+
+    @Test
+    void resultIsCompletedWithoutTheLock() throws Exception {
+        // La primera crida queda pendent; quan falla, el circuit s'obre i les següents ja vénen fallades
+        CompletableFuture<Quote> first = new CompletableFuture<>();
+        QuoteFanOut fanOut = new QuoteFanOut(category -> calls.getAndIncrement() == 0
+                ? first : CompletableFuture.failedFuture(new CircuitBreaker.OpenException()), "dev", 2, 1);
+        CompletableFuture<Boolean> addedFromAnotherThread = new CompletableFuture<>();
+
+        // Els dependents del resultat s'executen al fil que el completa: si aquest tingués el lock,
+        // l'add d'un altre fil s'hi quedaria esperant
+        fanOut.start(NO_DEADLINE).thenRun(() -> addedFromAnotherThread.complete(
+                CompletableFuture.supplyAsync(() -> fanOut.add(quote("late"))).completeOnTimeout(false, 2, TimeUnit.SECONDS).join()));
+        first.completeExceptionally(new IllegalStateException("Quote API is down"));
+        assertThat(addedFromAnotherThread.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(calls.get()).isEqualTo(6);
+    }
+
+    @Test
+    void keepsAtMostParallelismCallsRunning() {
+        List<CompletableFuture<Quote>> pending = new ArrayList<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        QuoteFanOut fanOut = new QuoteFanOut(category -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            CompletableFuture<Quote> call = new CompletableFuture<>();
+            pending.add(call);
+            return call;
+        }, "dev", 5, 2);
+
+        CompletableFuture<QuoteBatch> result = fanOut.start(NO_DEADLINE);
+        for (int i = 0; i < 5; i++) {
+            // Cada resposta en llança una altra, fins que les que hi ha en curs basten per arribar a 5
+            assertThat(pending).hasSize(Math.min(i + 2, 5));
+            running.decrementAndGet();
+            pending.get(i).complete(quote("q" + i));
+        }
+        QuoteBatch batch = result.join();
+        assertThat(ids(batch)).containsExactly("q0", "q1", "q2", "q3", "q4");
+        assertThat(maxRunning.get()).isEqualTo(2);
+    }
+
+    @Test
+    void answersWithWhatItHasAtTheDeadline() {
+        // Una crida torna de seguida i l'altra no acaba mai
+        List<CompletableFuture<Quote>> calls = List.of(CompletableFuture.completedFuture(quote("a")), new CompletableFuture<>());
+        AtomicInteger next = new AtomicInteger();
+        QuoteFanOut fanOut = new QuoteFanOut(category -> calls.get(Math.min(next.getAndIncrement(), 1)), "dev", 3, 2);
+
+        QuoteBatch batch = fanOut.start(50).orTimeout(5, TimeUnit.SECONDS).join();
+        assertThat(ids(batch)).containsExactly("a");
+        assertThat(batch.complete()).isFalse();
+    }
+}
@@ -0,0 +1,239 @@
+package net.xeill.elpuig.springbootrestfulconsumingapi.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.xeill.elpuig.springbootrestfulconsumingapi.model.Quote;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Cada "reopen" obre un QuoteSegmentStore nou sobre el mateix directori sense tancar l'anterior,
+// com si l'aplicació hagués caigut: només compta el que ja era al disc.
+// Cada acudit ocupa uns 130 bytes: amb segments de 300 bytes en caben 2 per segment
+class QuoteSegmentStoreTest {
+
+    private static final long SEGMENT_BYTES = 300;
+
+    @TempDir
+    Path dir;
+
+    private final List<QuoteSegmentStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void closeStores() throws IOException {
+        for (QuoteSegmentStore store : stores) {
+            store.close();
+        }
+    }
+
+    private QuoteSegmentStore reopen(long maxBytes) throws IOException {
+        QuoteSegmentStore store = new QuoteSegmentStore(dir, SEGMENT_BYTES, maxBytes);
+        stores.add(store);
+        return store;
+    }
+
+    private QuoteSegmentStore reopen() throws IOException {
+        return reopen(1 << 20);
+    }
+
+    private static Quote quote(int n) {
+        Quote quote = new Quote();
+        quote.setId("id-" + n);
+        quote.setValue("Chuck Norris joke number " + n + " with some padding to fill the record");
+        quote.setUrl("https://api.chucknorris.io/jokes/id-" + n);
+        // Els camps null també es guarden
+        quote.setIcon_url(null);
+        return quote;
+    }
+
+    private static void assertSameQuote(Quote actual, int n) {
+        Quote expected = quote(n);
+        assertThat(actual).isNotNull();
+        assertThat(actual.getId()).isEqualTo(expected.getId());
+        assertThat(actual.getValue()).isEqualTo(expected.getValue());
+        assertThat(actual.getUrl()).isEqualTo(expected.getUrl());
+        assertThat(actual.getIcon_url()).isNull();
+    }
+
+    private List<String> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(f -> f.getFileName().toString()).filter(f -> f.endsWith(suffix)).sorted().toList();
+        }
+    }
+
+    private QuoteSegmentStore fill(int count) throws IOException {
+        QuoteSegmentStore store = reopen();
+        for (int n = 1; n <= count; n++) {
+            assertThat(store.append(quote(n))).isTrue();
+        }
+        return store;
+    }
+
+    @Test
+    void rollsSegmentsAndWritesAnIndexForEachSealedOne() throws IOException {
+        fill(7);
+
+        // 2 acudits per segment: 4 segments, els 3 primers tancats amb el seu .idx
+        assertThat(files(".seg")).containsExactly("quotes-1.seg", "quotes-2.seg", "quotes-3.seg", "quotes-4.seg");
+        assertThat(files(".idx")).containsExactly("quotes-1.idx", "quotes-2.idx", "quotes-3.idx");
+        assertThat(files(".tmp")).isEmpty();
+    }
+
+    @Test
+    void reopenReadsEveryQuote() throws IOException {
+        QuoteSegmentStore before = fill(7);
+
+        QuoteSegmentStore store = reopen();
+        assertThat(store.size()).isEqualTo(7);
+        assertThat(store.bytes()).isEqualTo(before.bytes());
+        for (int n = 1; n <= 7; n++) {
+            assertSameQuote(store.read("id-" + n), n);
+        }
+        assertThat(store.read("id-8")).isNull();
+        // Es continua afegint al segment actiu
+        assertThat(store.append(quote(8))).isTrue();
+        assertSameQuote(reopen().read("id-8"), 8);
+    }
+
+    @Test
+    void reopenWithoutIndexFilesScansEverySegment() throws IOException {
+        fill(7);
+        for (String idx : files(".idx")) {
+            Files.delete(dir.resolve(idx));
+        }
+
+        QuoteSegmentStore store = reopen();
+        assertThat(store.size()).isEqualTo(7);
+        for (int n = 1; n <= 7; n++) {
+            assertSameQuote(store.read("id-" + n), n);
+        }
+        // Els .idx dels segments tancats es tornen a escriure
+        assertThat(files(".idx")).containsExactly("quotes-1.idx", "quotes-2.idx", "quotes-3.idx");
+    }
+
+    @Test
+    void damagedIndexFileFallsBackToScanning() throws IOException {
+        fill(7);
+        Files.write(dir.resolve("quotes-2.idx"), new byte[]{0, 0, 0, 5, 1, 2});
+
+        QuoteSegmentStore store = reopen();
+        assertThat(store.size()).isEqualTo(7);
+        assertSameQuote(store.read("id-3"), 3);
+        assertSameQuote(store.read("id-4"), 4);
+    }
+
+    @Test
+    void tornTailOfTheActiveSegmentIsDropped() throws IOException {
+        fill(7);
+        Path active = dir.resolve("quotes-4.seg");
+        long complete = Files.size(active);
+        // Una caiguda a mig escriure el registre següent
+        byte[] record = QuoteSegmentStore.encode(quote(8));
+        try (RandomAccessFile file = new RandomAccessFile(active.toFile(), "rw")) {
+            file.seek(complete);
+            file.write(Arrays.copyOf(record, record.length / 2));
+        }
+
+        QuoteSegmentStore store = reopen();
+        assertThat(store.size()).isEqualTo(7);
+        assertThat(store.read("id-8")).isNull();
+        assertThat(Files.size(active)).isEqualTo(complete);
+        // El que s'escriu després de tallar la cua sobreviu
+        assertThat(store.append(quote(8))).isTrue();
+        QuoteSegmentStore recovered = reopen();
+        assertThat(recovered.size()).isEqualTo(8);
+        assertSameQuote(recovered.read("id-8"), 8);
+    }
+
+    @Test
+    void recordWithABadChecksumEndsTheActiveSegment() throws IOException {
+        fill(7);
+        Path active = dir.resolve("quotes-4.seg");
+        // L'últim byte del payload de id-7, l'únic acudit del segment actiu
+        try (RandomAccessFile file = new RandomAccessFile(active.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            int b = file.read();
+            file.seek(file.length() - 1);
+            file.write(b ^ 0xFF);
+        }
+
+        QuoteSegmentStore store = reopen();
+        assertThat(store.size()).isEqualTo(6);
+        assertThat(store.read("id-7")).isNull();
+        assertThat(Files.size(active)).isZero();
+    }
+
+    @Test
+    void appendSkipsQuotesAlreadyStored() throws IOException {
+        QuoteSegmentStore store = fill(3);
+        long bytes = store.bytes();
+
+        assertThat(store.append(quote(2))).isFalse();
+        assertThat(store.size()).isEqualTo(3);
+        assertThat(store.bytes()).isEqualTo(bytes);
+        assertThat(reopen().size()).isEqualTo(3);
+    }
+
+    @Test
+    void dropsTheOldestSegmentsBeyondMaxBytes() throws IOException {
+        // Es mira en obrir cada segment nou: els tancats no passen de maxBytes, i el nou encara és buit.
+        // En obrir el cinquè hi ha 4 segments de ~260 bytes: s'esborren el primer i el segon
+        QuoteSegmentStore store = reopen(2 * SEGMENT_BYTES);
+        for (int n = 1; n <= 9; n++) {
+            store.append(quote(n));
+        }
+
+        assertThat(files(".seg")).containsExactly("quotes-3.seg", "quotes-4.seg", "quotes-5.seg");
+        assertThat(files(".idx")).containsExactly("quotes-3.idx", "quotes-4.idx");
+        assertThat(store.size()).isEqualTo(5);
+        for (int n = 1; n <= 4; n++) {
+            assertThat(store.read("id-" + n)).isNull();
+        }
+        for (int n = 5; n <= 9; n++) {
+            assertSameQuote(store.read("id-" + n), n);
+        }
+        assertThat(store.randomId()).isIn("id-5", "id-6", "id-7", "id-8", "id-9");
+        assertThat(store.bytes()).isLessThanOrEqualTo(2 * SEGMENT_BYTES + SEGMENT_BYTES);
+
+        QuoteSegmentStore recovered = reopen(2 * SEGMENT_BYTES);
+        assertThat(recovered.size()).isEqualTo(5);
+        assertThat(recovered.bytes()).isEqualTo(store.bytes());
+        // Un acudit esborrat es pot tornar a guardar
+        assertThat(recovered.append(quote(1))).isTrue();
+    }
+
+    @Test
+    void cacheTreatsAFailedDiskReadAsAMiss() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QuoteCache cache = new QuoteCache(registry, 1, true, dir.toString(), SEGMENT_BYTES, 1 << 20);
+        try {
+            cache.put(quote(1));
+            // id-1 surt de la memòria (1 entrada) i només queda al disc
+            cache.put(quote(2));
+            assertSameQuote(cache.get("id-1"), 1);
+            cache.put(quote(2));
+
+            // El segment ja no té els bytes de id-1: la lectura falla amb una IOException
+            try (RandomAccessFile file = new RandomAccessFile(dir.resolve("quotes-1.seg").toFile(), "rw")) {
+                file.setLength(0);
+            }
+            assertThat(cache.get("id-1")).isNull();
+            assertThat(cache.stats().diskHits()).isEqualTo(1);
+            assertThat(cache.stats().misses()).isEqualTo(1);
+            // La resta de la cache continua funcionant
+            assertSameQuote(cache.get("id-2"), 2);
+        } finally {
+            cache.close();
+        }
+    }
+}
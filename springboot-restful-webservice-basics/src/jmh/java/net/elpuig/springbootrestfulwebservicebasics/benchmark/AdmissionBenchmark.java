@@ -0,0 +1,100 @@
+package net.elpuig.springbootrestfulwebservicebasics.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import net.xeill.elpuig.shared.admission.AdaptiveConcurrencyLimiter;
+import net.xeill.elpuig.shared.admission.AdmissionFilter;
+import net.xeill.elpuig.shared.admission.TokenBucketLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Cost del control d'admissió per petició, amb molts fils alhora:
+//   - el token bucket amb un sol client (tots els fils sobre el mateix bucket) i amb molts clients
+//   - adquirir i alliberar el límit de concurrència
+//   - la cadena de filtres sense AdmissionFilter i amb AdmissionFilter (la diferència és el cost real del filtre)
+// Els límits són tan alts que cap petició es rebutja: es mesura el camí normal.
+// Per canviar el nombre de fils: -Djmh.args="AdmissionBenchmark -t 16"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class AdmissionBenchmark {
+
+    static final int CLIENTS = 4096;
+
+    TokenBucketLimiter rateLimiter;
+    AdaptiveConcurrencyLimiter concurrencyLimiter;
+    AdmissionFilter filter;
+    String[] clients;
+
+    final FilterChain endpoint = (request, response) -> { };
+
+    // Cada fil té la seva petició, com cada fil de Tomcat
+    @State(Scope.Thread)
+    public static class Exchange {
+
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v0/users");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+    }
+
+    @Setup
+    public void setup() {
+        rateLimiter = new TokenBucketLimiter(1e9, Integer.MAX_VALUE, 16384);
+        concurrencyLimiter = new AdaptiveConcurrencyLimiter(1000, 10, 1000, 1.5, 1000);
+        filter = new AdmissionFilter(new SimpleMeterRegistry(), true, Set.of("/api/v0/users/changes"), "",
+                1e9, Integer.MAX_VALUE, 16384, 1000, 10, 1000, 1.5, 1000);
+        clients = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i] = "10.0." + (i >> 8) + "." + (i & 255);
+        }
+    }
+
+    @Benchmark
+    public long tokenBucketOneClient() {
+        return rateLimiter.tryAcquire("127.0.0.1");
+    }
+
+    @Benchmark
+    public long tokenBucketManyClients() {
+        return rateLimiter.tryAcquire(clients[ThreadLocalRandom.current().nextInt(CLIENTS)]);
+    }
+
+    @Benchmark
+    public boolean concurrencyAcquireRelease() {
+        boolean acquired = concurrencyLimiter.tryAcquire();
+        if (acquired) {
+            concurrencyLimiter.release(System.nanoTime() - 1_000_000);
+        }
+        return acquired;
+    }
+
+    @Benchmark
+    public int chainWithoutAdmission(Exchange exchange) throws Exception {
+        endpoint.doFilter(exchange.request, exchange.response);
+        return exchange.response.getStatus();
+    }
+
+    @Benchmark
+    public int chainWithAdmission(Exchange exchange) throws Exception {
+        filter.doFilter(exchange.request, exchange.response, endpoint);
+        return exchange.response.getStatus();
+    }
+}
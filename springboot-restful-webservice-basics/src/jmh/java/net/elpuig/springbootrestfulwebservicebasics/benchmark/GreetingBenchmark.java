@@ -0,0 +1,103 @@
+package net.elpuig.springbootrestfulwebservicebasics.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.elpuig.springbootrestfulwebservicebasics.controller.GreetingController;
+import net.elpuig.springbootrestfulwebservicebasics.model.Greeting;
+import net.elpuig.springbootrestfulwebservicebasics.service.GreetingIdGenerator;
+import net.xeill.elpuig.shared.text.MessageTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// GreetingController.greeting (escrivint en una MockHttpServletResponse) i, per separat, com es construeix la resposta:
+//   formatJackson  com es feia abans: String.format i després Jackson per passar el Greeting a JSON
+//   template       la plantilla compilada que fa servir ara el controlador, escrivint en un buffer fix
+//                  (com el buffer de sortida del servidor)
+// "format" i "concat" són només el missatge, com a referència.
+// Amb -prof gc es veu també la memòria que es crea per operació (gc.alloc.rate.norm):
+//   ./mvnw -Pjmh test-compile exec:exec -Djmh.args="GreetingBenchmark -prof gc"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GreetingBenchmark {
+
+    @Param({"World", "Maria Antònia de la Serra"})
+    String name;
+
+    final GreetingController controller = new GreetingController(new GreetingIdGenerator(new SimpleMeterRegistry(), 0));
+
+    final ObjectWriter writer = Jackson2ObjectMapperBuilder.json().build().writerFor(Greeting.class);
+
+    final MessageTemplate template = MessageTemplate.compile("{\"id\":%d,\"content\":\"Hello, %s!\"}");
+
+    final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    final ResponseBuffer buffer = new ResponseBuffer();
+
+    long id = 1_000_000_000_000L;
+
+    // Inclou el que hi posa MockHttpServletResponse (capçaleres, ByteArrayOutputStream...)
+    @Benchmark
+    public MockHttpServletResponse greeting() throws IOException {
+        response.reset();
+        controller.greeting(name, response);
+        return response;
+    }
+
+    @Benchmark
+    public byte[] formatJackson() throws JsonProcessingException {
+        return writer.writeValueAsBytes(new Greeting(id++, String.format("Hello, %s!", name)));
+    }
+
+    @Benchmark
+    public int template() throws IOException {
+        buffer.size = 0;
+        template.writeTo(id++, name, MessageTemplate.Escape.JSON, buffer);
+        return buffer.size;
+    }
+
+    @Benchmark
+    public String format() {
+        return String.format("Hello, %s!", name);
+    }
+
+    @Benchmark
+    public String concat() {
+        return "Hello, " + name + "!";
+    }
+
+    // Com el buffer de sortida del servidor: un array fix que es buida a cada operació
+    static final class ResponseBuffer extends OutputStream {
+        final byte[] bytes = new byte[1024];
+        int size;
+
+        @Override
+        public void write(int b) {
+            bytes[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            System.arraycopy(b, off, bytes, size, len);
+            size += len;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package net.elpuig.springbootrestfulwebservicebasics.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.elpuig.springbootrestfulwebservicebasics.service.GreetingIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Ids de salutació amb molts fils alhora: l'AtomicLong d'abans contra GreetingIdGenerator.
+// Tots els fils comparteixen el mateix comptador (Scope.Benchmark), com les peticions a GreetingController.
+// Per canviar el nombre de fils: -Djmh.args="GreetingIdBenchmark -t 16"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class GreetingIdBenchmark {
+
+    final AtomicLong counter = new AtomicLong();
+
+    final GreetingIdGenerator generator = new GreetingIdGenerator(new SimpleMeterRegistry(), 1);
+
+    @Benchmark
+    public long atomicLong() {
+        return counter.incrementAndGet();
+    }
+
+    @Benchmark
+    public long snowflake() {
+        return generator.nextId();
+    }
+}
@@ -0,0 +1,75 @@
+package net.elpuig.springbootrestfulwebservicebasics.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import net.elpuig.springbootrestfulwebservicebasics.model.Greeting;
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Serialitzar i llegir User i Greeting amb Jackson, configurat com el configura Spring Boot
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    ObjectWriter userWriter;
+    ObjectReader userReader;
+    ObjectWriter greetingWriter;
+    ObjectReader greetingReader;
+
+    final User user = new User(42L, "user42@exemple.com", "User Forty Two", "password42");
+    final Greeting greeting = new Greeting(42L, "Hello, World!");
+    byte[] userJson;
+    byte[] greetingJson;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        userWriter = mapper.writerFor(User.class);
+        userReader = mapper.readerFor(User.class);
+        greetingWriter = mapper.writerFor(Greeting.class);
+        greetingReader = mapper.readerFor(Greeting.class);
+        // El que envia un client en un POST (amb contrasenya, que mai s'escriu a les respostes)
+        userJson = "{\"id\":42,\"email\":\"user42@exemple.com\",\"fullName\":\"User Forty Two\",\"password\":\"password42\"}"
+                .getBytes(StandardCharsets.UTF_8);
+        greetingJson = greetingWriter.writeValueAsBytes(greeting);
+    }
+
+    @Benchmark
+    public byte[] writeUser() throws IOException {
+        return userWriter.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public User readUser() throws IOException {
+        return userReader.readValue(userJson);
+    }
+
+    @Benchmark
+    public byte[] writeGreeting() throws IOException {
+        return greetingWriter.writeValueAsBytes(greeting);
+    }
+
+    @Benchmark
+    public Greeting readGreeting() throws IOException {
+        return greetingReader.readValue(greetingJson);
+    }
+}
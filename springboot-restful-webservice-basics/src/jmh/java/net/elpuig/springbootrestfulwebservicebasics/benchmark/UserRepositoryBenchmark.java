@@ -0,0 +1,118 @@
+package net.elpuig.springbootrestfulwebservicebasics.benchmark;
+
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserJournal;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// findById, save i deleteById del UserRepository (sense persistència) amb diferents
+// quantitats d'usuaris i els dos tipus d'emmagatzematge.
+// La contenció es mesura amb els mètodes amb @Threads i amb el grup "mixed"
+// (3 fils llegint mentre 1 fil escriu); amb -t N es pot provar qualsevol altre nombre de fils.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserRepositoryBenchmark {
+
+    // Un hash PBKDF2 de mida real: el que es guarda de veritat a cada usuari
+    private static final String HASH = "pbkdf2$210000$c2FsdHNhbHRzYWx0c2FsdA==$aGFzaGhhc2hoYXNoaGFzaGhhc2hoYXNoaGFzaGhhc2g=";
+    private static final int BATCH = 10_000;
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    @Param({"heap", "compact"})
+    String storage;
+
+    UserRepository repository;
+    User[] users;
+
+    // Cada fil tria ids a l'atzar amb el seu propi generador
+    @State(Scope.Thread)
+    public static class Ids {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Setup
+    public void setup() {
+        repository = new UserRepository(new UserJournal(false, "target/jmh-users", true, 0, 0), storage, false, true);
+        users = new User[size];
+        for (int i = 0; i < size; i++) {
+            long id = i + 1;
+            users[i] = new User(id, "user" + id + "@exemple.com", "User " + id, HASH);
+        }
+        for (int from = 0; from < size; from += BATCH) {
+            repository.saveAll(Arrays.asList(users).subList(from, Math.min(size, from + BATCH)));
+        }
+    }
+
+    private User pick(Ids ids) {
+        return users[ids.random.nextInt(size)];
+    }
+
+    @Benchmark
+    public Optional<User> findById(Ids ids) {
+        return repository.findById(pick(ids).id());
+    }
+
+    // Actualitza un usuari existent (mateix email): comprovació d'email, store, índexs i versió
+    @Benchmark
+    public User save(Ids ids) {
+        return repository.save(pick(ids));
+    }
+
+    // Esborra un usuari i el torna a afegir, perquè la mida no canviï durant la mesura
+    @Benchmark
+    public User deleteById(Ids ids) {
+        User user = pick(ids);
+        repository.deleteById(user.id());
+        return repository.save(user);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<User> findByIdContended(Ids ids) {
+        return repository.findById(pick(ids).id());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public User saveContended(Ids ids) {
+        return repository.save(pick(ids));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Optional<User> mixedRead(Ids ids) {
+        return repository.findById(pick(ids).id());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public User mixedWrite(Ids ids) {
+        return repository.save(pick(ids));
+    }
+}
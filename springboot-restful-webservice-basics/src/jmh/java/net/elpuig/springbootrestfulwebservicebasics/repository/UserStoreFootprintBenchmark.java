@@ -0,0 +1,103 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Memòria que ocupen "size" usuaris a cada tipus d'emmagatzematge: l'ArrayList original,
+// HeapUserStore i CompactUserStore (al heap i fora del heap).
+// Cada invocació omple un store nou; el temps és el d'omplir-lo i el comptador auxiliar
+// "bytesPerUser" és el heap que queda ocupat després d'un GC, dividit pel nombre d'usuaris.
+// És al paquet repository perquè els stores no són públics.
+//   ./mvnw -Pjmh test-compile exec:exec -Djmh.args="UserStoreFootprintBenchmark -p size=2000000"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class UserStoreFootprintBenchmark {
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"list", "heap", "compact", "compact-off-heap"})
+    String storage;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public double bytesPerUser;
+
+        long before;
+        // El store de l'última invocació: es manté viu fins que s'ha mesurat el heap
+        Object store;
+
+        @Setup(Level.Invocation)
+        public void before() {
+            store = null;
+            before = usedHeap();
+        }
+
+        @TearDown(Level.Invocation)
+        public void measure(UserStoreFootprintBenchmark benchmark) {
+            bytesPerUser = (usedHeap() - before) / (double) benchmark.size;
+            store = null;
+        }
+    }
+
+    @Benchmark
+    public void fill(Footprint footprint, Blackhole blackhole) {
+        Object store = switch (storage) {
+            case "list" -> {
+                List<User> users = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    users.add(user(i));
+                }
+                yield users;
+            }
+            case "heap" -> fill(new HeapUserStore());
+            case "compact" -> fill(new CompactUserStore(false));
+            case "compact-off-heap" -> fill(new CompactUserStore(true));
+            default -> throw new IllegalArgumentException(storage);
+        };
+        footprint.store = store;
+        blackhole.consume(store);
+    }
+
+    private UserStore fill(UserStore store) {
+        for (int i = 0; i < size; i++) {
+            store.put(user(i), 1);
+        }
+        return store;
+    }
+
+    private static User user(int i) {
+        return new User(i, "user" + i + "@exemple.com", "User Number " + i, "password" + i);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -2,8 +2,14 @@
 package net.elpuig.springbootrestfulwebservicebasics.controller;
 
 // Importacions necessàries per al funcionament del codi
-// Importa la classe model Greeting que defineix l'estructura de dades que retornarà l'API
-import net.elpuig.springbootrestfulwebservicebasics.model.Greeting;
+// Importa el generador d'ids únics entre instàncies (estil Snowflake)
+import net.elpuig.springbootrestfulwebservicebasics.service.GreetingIdGenerator;
+// Importa la plantilla compilada que escriu el JSON de la resposta (és a ../shared, la fan servir diversos mòduls)
+import net.xeill.elpuig.shared.text.MessageTemplate;
+// La resposta HTTP: hi escrivim el JSON directament
+import jakarta.servlet.http.HttpServletResponse;
+// Tipus de contingut de la resposta (application/json)
+import org.springframework.http.MediaType;
 // Anotació per gestionar peticions HTTP GET
 import org.springframework.web.bind.annotation.GetMapping;
 // Anotació per mapejar URLs a aquesta classe controladora
@@ -13,8 +19,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 // Anotació que identifica aquesta classe com a controlador REST
 import org.springframework.web.bind.annotation.RestController;
 
-// Classe per crear comptadors segurs en entorns multifil (thread-safe)
-import java.util.concurrent.atomic.AtomicLong;
+import java.io.IOException;
 
 // Marca aquesta classe com un controlador REST, que combina @Controller i @ResponseBody
 // Això significa que els mètodes retornaran dades (no vistes) i seran convertides automàticament a JSON
@@ -29,28 +34,40 @@ public class GreetingController {
     // Utilitzar constants en lloc de cadenes literals millora la mantenibilitat del codi
     public static final String GREETING_CONTROLLER = "/greeting";
 
-    // Plantilla pel missatge de salutació
-    // %s és un marcador de posició que serà substituït pel nom proporcionat
-    private static final String template = "Hello, %s!";
+    // Plantilla de la resposta sencera: el JSON d'un Greeting(id, content) amb el missatge "Hello, %s!"
+    // %d és el marcador de l'id i %s el del nom, que s'escapa com a text JSON (cometes, \\, salts de línia...)
+    // Es compila una sola vegada: a cada petició no es torna a analitzar el format (com fa String.format)
+    // i el JSON s'escriu directament en bytes, sense que Jackson hagi de mirar el record per reflexió
+    private static final MessageTemplate template = MessageTemplate.compile("{\"id\":%d,\"content\":\"Hello, %s!\"}");
 
-    // Comptador que generarà un ID únic per a cada salutació
-    // AtomicLong garanteix la integritat en entorns concurrents (multiusuari)
-    private final AtomicLong counter = new AtomicLong();
+    // Generador de l'ID únic de cada salutació
+    // Abans era un AtomicLong que tornava a començar per 1 a cada reinici i es repetia entre instàncies;
+    // GreetingIdGenerator combina l'hora, una seqüència i el número de node (greeting.ids.node)
+    private final GreetingIdGenerator ids;
+
+    // Spring injecta el generador d'ids. El temps de cada petició el publica Spring a /actuator/prometheus
+    // (http.server.requests{uri="/greeting"}), així que aquí no cal cap temporitzador
+    public GreetingController(GreetingIdGenerator ids) {
+        this.ids = ids;
+    }
 
     // @GetMapping sense paràmetres significa que aquest mètode respondrà a GET /greeting
     // Com que ja hem definit la ruta a nivell de classe amb @RequestMapping, no cal especificar-la aquí
-    @GetMapping
+    // produces: la resposta és JSON
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
 
-    // Aquest mètode gestiona les peticions i retorna un objecte Greeting
+    // Aquest mètode gestiona les peticions i escriu el JSON d'un Greeting en UTF-8 directament a la resposta
+    // (sense crear cap array: els bytes van al buffer de sortida del servidor)
     // @RequestParam busca un paràmetre anomenat "name" a la URL (exemple: /greeting?name=Pere)
     // defaultValue="World" significa que si no es proporciona el paràmetre, s'utilitzarà "World"
-    public Greeting greeting(@RequestParam(value = "name", defaultValue = "World") String name) {
-        // Crea i retorna un nou objecte Greeting amb:
-        // 1. Un ID únic generat incrementant el comptador (counter.incrementAndGet())
-        // 2. Un missatge formatat substituint %s pel nom rebut (String.format(template, name))
-        // Spring
-        // convertirà automàticament aquest objecte a JSON gràcies a Jackson
-        return new Greeting(counter.incrementAndGet(), String.format(template, name));
+    public void greeting(@RequestParam(value = "name", defaultValue = "World") String name,
+                         HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        // Escriu el JSON d'un Greeting amb:
+        // 1. Un ID únic generat pel generador d'ids (ids.nextId())
+        // 2. El missatge de la plantilla amb el nom rebut al lloc de %s
+        // El resultat és el mateix JSON que faria Jackson amb new Greeting(id, String.format("Hello, %s!", name))
+        template.writeTo(ids.nextId(), name, MessageTemplate.Escape.JSON, response.getOutputStream());
     }
     // http://localhost:8080/greeting?name=Mouad
 }
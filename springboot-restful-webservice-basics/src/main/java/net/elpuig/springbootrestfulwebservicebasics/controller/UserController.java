@@ -1,12 +1,19 @@
 package net.elpuig.springbootrestfulwebservicebasics.controller;
 
+import net.elpuig.springbootrestfulwebservicebasics.model.BulkResult;
 import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserSearchField;
+import net.elpuig.springbootrestfulwebservicebasics.service.UserChangeFeed;
 import net.elpuig.springbootrestfulwebservicebasics.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 @Controller
 public class UserController {
@@ -22,16 +29,70 @@ public class UserController {
         return userService.getAllUsers();
     }
 
+    // Tots els usuaris en JSON
+    public byte[] getAllUsersJson() {
+        return userService.getAllUsersJson();
+    }
+
+    // Obtenir una pàgina d'usuaris a partir d'un cursor
+    public List<User> getUsersAfter(Long after, int limit) {
+        return userService.getUsersAfter(after, limit);
+    }
+
+    // Recórrer tots els usuaris en ordre sense carregar-los tots a memòria
+    public Stream<User> streamUsers() {
+        return userService.streamUsers();
+    }
+
+    // Etiquetes de versió per als ETag
+    public String getUsersVersionTag() {
+        return userService.getUsersVersionTag();
+    }
+
+    public Optional<String> getUserVersionTag(Long id) {
+        return userService.getUserVersionTag(id);
+    }
+
+    // Rebre els canvis dels usuaris a partir d'una versió
+    public void subscribeToChanges(String since, UserChangeFeed.Sink sink) {
+        userService.subscribeToChanges(since, sink);
+    }
+
     // Obtenir un usuari per un ID
     public Optional<User> getUserById(Long id) {
         return userService.getUserById(id);
     }
 
+    // Cercar usuaris per email o nom
+    public List<User> searchUsers(UserSearchField field, String query, int limit) {
+        return userService.searchUsers(field, query, limit);
+    }
+
+    // Un usuari en JSON
+    public Optional<byte[]> getUserJsonById(Long id) {
+        return userService.getUserJsonById(id);
+    }
+
+    // Obtenir un usuari per email
+    public Optional<User> getUserByEmail(String email) {
+        return userService.getUserByEmail(email);
+    }
+
     // Afegir o actualitzar un usuari
-    public User saveUSer(User user) {
+    public CompletableFuture<User> saveUSer(User user) {
         return userService.saveUser(user);
     }
 
+    // Comprovar la contrasenya d'un usuari
+    public Optional<CompletableFuture<Boolean>> verifyPassword(Long id, String password) {
+        return userService.verifyPassword(id, password);
+    }
+
+    // Carregar molts usuaris d'una vegada des d'un cos NDJSON
+    public BulkResult importUsers(InputStream body, int batchSize) throws IOException {
+        return userService.importUsers(body, batchSize);
+    }
+
     // Eliminar un usuari
     public boolean deleteUserById(Long id) {
         return userService.deleteUser(id);
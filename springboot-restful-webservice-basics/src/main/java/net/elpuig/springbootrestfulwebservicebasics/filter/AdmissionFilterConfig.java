@@ -0,0 +1,27 @@
+package net.elpuig.springbootrestfulwebservicebasics.filter;
+
+import net.xeill.elpuig.shared.admission.AdmissionFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.Ordered;
+
+import java.util.List;
+
+// AdmissionFilter a /api/*, excepte les connexions llargues /api/v0/users/changes i /api/v0/users/stream (vegeu AdmissionFilter)
+@Configuration
+@Import(AdmissionFilter.class)
+public class AdmissionFilterConfig {
+
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilterRegistration(
+            AdmissionFilter filter,
+            @Value("${admission.url-patterns:/api/*}") List<String> urlPatterns) {
+        FilterRegistrationBean<AdmissionFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setUrlPatterns(urlPatterns);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        return registration;
+    }
+}
@@ -0,0 +1,6 @@
+package net.elpuig.springbootrestfulwebservicebasics.model;
+
+// Resum d'un lot de la càrrega massiva d'usuaris:
+// quants usuaris s'han creat, quants s'han actualitzat i quants s'han rebutjat
+public record BatchSummary(int inserted, int updated, int rejected) {
+}
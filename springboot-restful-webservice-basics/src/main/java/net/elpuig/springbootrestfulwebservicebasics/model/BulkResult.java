@@ -0,0 +1,7 @@
+package net.elpuig.springbootrestfulwebservicebasics.model;
+
+import java.util.List;
+
+// Resultat de POST /api/v0/users/bulk: el resum de cada lot i els totals
+public record BulkResult(List<BatchSummary> batches, long inserted, long updated, long rejected) {
+}
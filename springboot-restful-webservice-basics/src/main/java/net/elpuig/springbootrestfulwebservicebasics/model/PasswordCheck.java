@@ -0,0 +1,5 @@
+package net.elpuig.springbootrestfulwebservicebasics.model;
+
+// Cos de POST /api/v0/users/{id}/verify: la contrasenya que es vol comprovar
+public record PasswordCheck(String password) {
+}
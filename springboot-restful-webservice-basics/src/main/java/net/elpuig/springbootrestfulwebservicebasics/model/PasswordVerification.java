@@ -0,0 +1,5 @@
+package net.elpuig.springbootrestfulwebservicebasics.model;
+
+// Resposta de POST /api/v0/users/{id}/verify
+public record PasswordVerification(boolean valid) {
+}
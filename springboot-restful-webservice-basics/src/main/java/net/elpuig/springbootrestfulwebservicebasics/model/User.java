@@ -1,6 +1,16 @@
 package net.elpuig.springbootrestfulwebservicebasics.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 // Una classe (record) User amb (id, email, fullName i password)
+// La contrasenya es pot rebre en un JSON però mai s'escriu a les respostes (WRITE_ONLY).
+// Un cop desada, "password" conté el hash PBKDF2 i no la contrasenya original.
+
+public record User(long id, String email,  String fullName,
+                   @JsonProperty(access = JsonProperty.Access.WRITE_ONLY) String password) {
 
-public record User(long id, String email,  String fullName, String password) {
+    // Una còpia de l'usuari amb una altra contrasenya (o hash)
+    public User withPassword(String password) {
+        return new User(id, email, fullName, password);
+    }
 }
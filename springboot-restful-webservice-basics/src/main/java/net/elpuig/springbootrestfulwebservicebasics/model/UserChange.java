@@ -0,0 +1,21 @@
+package net.elpuig.springbootrestfulwebservicebasics.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Un canvi del repositori d'usuaris, tal com surt a GET /api/v0/users/changes.
+// "seq" és la versió global del repositori després del canvi: augmenta d'1 en 1 amb cada save/deleteById.
+// type és "saved" (user és l'usuari desat) o "deleted" (només hi ha l'id)
+public record UserChange(long seq, String type, long id,
+                         @JsonInclude(JsonInclude.Include.NON_NULL) User user) {
+
+    public static final String SAVED = "saved";
+    public static final String DELETED = "deleted";
+
+    public static UserChange saved(long seq, User user) {
+        return new UserChange(seq, SAVED, user.id(), user);
+    }
+
+    public static UserChange deleted(long seq, long id) {
+        return new UserChange(seq, DELETED, id, null);
+    }
+}
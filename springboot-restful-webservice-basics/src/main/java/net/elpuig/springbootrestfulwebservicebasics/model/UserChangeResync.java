@@ -0,0 +1,10 @@
+package net.elpuig.springbootrestfulwebservicebasics.model;
+
+// Esdeveniment "resync" de GET /api/v0/users/changes: el client ha perdut canvis i ha de tornar a llegir
+// tots els usuaris (GET /api/v0/users). Els canvis que arribin després són els posteriors a "seq".
+// reason:
+//   lagged     el client anava tan endarrerit que els canvis que li faltaven ja no es guarden
+//   expired    el "since" demanat és més antic que els canvis que es guarden
+//   restarted  el "since" és d'una altra arrencada (un altre epoch) o d'una versió que no existeix
+public record UserChangeResync(String epoch, long seq, String reason) {
+}
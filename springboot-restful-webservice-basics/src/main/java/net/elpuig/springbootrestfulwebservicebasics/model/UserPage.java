@@ -0,0 +1,8 @@
+package net.elpuig.springbootrestfulwebservicebasics.model;
+
+import java.util.List;
+
+// Una pàgina d'usuaris per a la paginació per cursor.
+// "next" és el valor que s'ha de passar com a "after" per obtenir la pàgina següent (null si no n'hi ha més)
+public record UserPage(List<User> users, Long next) {
+}
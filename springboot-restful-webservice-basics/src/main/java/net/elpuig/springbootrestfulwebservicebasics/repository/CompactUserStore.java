@@ -0,0 +1,410 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Emmagatzematge compacte (users.storage=compact) per a molts milions d'usuaris.
+// En lloc d'un objecte User i tres String per usuari, els usuaris es guarden per columnes:
+//   - ids[slot], addresses[slot], versions[slot] i emailHashes[slot] són arrays primitius
+//   - email, fullName i password es guarden en UTF-8 dins d'una "arena" de ByteBuffers
+//     (al heap o fora del heap amb users.storage.off-heap=true). Cada registre comença amb el seu slot,
+//     perquè la compactació pugui recórrer un tros sense mirar tots els slots
+//   - els índexs per id i per email són taules de slots (SlotTable) i l'ordre d'ids és un SortedLongBlocks
+// Els objectes User només es creen quan algú els llegeix.
+class CompactUserStore implements UserStore {
+
+    // Cada tros de l'arena fa 4 MB; una adreça és (número de tros << CHUNK_BITS) | posició
+    private static final int CHUNK_BITS = 22;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int PAGE = 512;
+
+    private final boolean offHeap;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Columnes per slot
+    private long[] ids = new long[1024];
+    private long[] addresses = new long[1024];
+    private long[] versions = new long[1024];
+    private int[] emailHashes = new int[1024];
+    private int slots;
+    private int[] freeSlots = new int[64];
+    private int freeCount;
+
+    private final SlotTable byId = new SlotTable(1024);
+    private final SlotTable byEmail = new SlotTable(1024);
+    private final SortedLongBlocks orderedIds = new SortedLongBlocks();
+
+    // Arena de bytes amb els strings. Un tros compactat queda a null i el seu número es torna a fer servir
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    // Bytes de registres vius de cada tros
+    private int[] chunkLive = new int[16];
+    private int[] freeChunks = new int[16];
+    private int freeChunkCount;
+    // Tros on s'afegeixen els registres nous (-1 = encara no n'hi ha cap)
+    private int tail = -1;
+    private long usedBytes;
+    private long liveBytes;
+
+    private volatile int size;
+
+    CompactUserStore(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    @Override
+    public User get(long id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(id);
+            return slot < 0 ? null : materialise(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long version(long id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(id);
+            return slot < 0 ? -1 : versions[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Long idForEmail(String email) {
+        byte[] bytes = email.getBytes(StandardCharsets.UTF_8);
+        int hash = email.hashCode();
+        lock.readLock().lock();
+        try {
+            int slot = byEmail.find(hash, s -> emailHashes[s] == hash && emailEquals(s, bytes));
+            return slot < 0 ? null : ids[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User put(User user, long version) {
+        byte[] email = bytes(user.email());
+        byte[] fullName = bytes(user.fullName());
+        byte[] password = bytes(user.password());
+        lock.writeLock().lock();
+        try {
+            User previous = null;
+            int slot = slotOf(user.id());
+            if (slot >= 0) {
+                previous = materialise(slot);
+                if (previous.email() != null) {
+                    byEmail.remove(emailHashes[slot], slot, s -> emailHashes[s]);
+                }
+                releaseRecord(addresses[slot]);
+            } else {
+                slot = allocateSlot();
+                ids[slot] = user.id();
+                byId.insert(user.id(), slot, s -> ids[s]);
+                orderedIds.add(user.id());
+                size++;
+            }
+            addresses[slot] = append(slot, email, fullName, password);
+            versions[slot] = version;
+            if (email != null) {
+                emailHashes[slot] = user.email().hashCode();
+                byEmail.insert(emailHashes[slot], slot, s -> emailHashes[s]);
+            }
+            compactIfNeeded();
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public User remove(long id) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(id);
+            if (slot < 0) {
+                return null;
+            }
+            User removed = materialise(slot);
+            if (removed.email() != null) {
+                byEmail.remove(emailHashes[slot], slot, s -> emailHashes[s]);
+            }
+            byId.remove(id, slot, s -> ids[s]);
+            orderedIds.remove(id);
+            releaseRecord(addresses[slot]);
+            releaseSlot(slot);
+            size--;
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<User> after(Long after, int limit) {
+        List<User> result = new ArrayList<>(Math.min(limit, PAGE));
+        Long cursor = after;
+        while (result.size() < limit) {
+            long[] page = new long[Math.min(PAGE, limit - result.size())];
+            int n;
+            lock.readLock().lock();
+            try {
+                n = orderedIds.copyAfter(cursor, page);
+                for (int i = 0; i < n; i++) {
+                    result.add(materialise(slotOf(page[i])));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (n < page.length) {
+                break;
+            }
+            cursor = page[n - 1];
+        }
+        return result;
+    }
+
+    @Override
+    public Stream<User> stream() {
+        // Es llegeix per pàgines: el lock de lectura només es té mentre es copia cada pàgina
+        Iterator<User> it = new Iterator<>() {
+            private List<User> page = after(null, PAGE);
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                if (i < page.size()) {
+                    return true;
+                }
+                if (page.size() < PAGE) {
+                    return false;
+                }
+                page = after(page.get(page.size() - 1).id(), PAGE);
+                i = 0;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public User next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(i++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Bytes ocupats per l'arena (inclou els registres antics dels trossos que encara no s'han compactat)
+    long arenaBytes() {
+        return usedBytes;
+    }
+
+    private int slotOf(long id) {
+        return byId.find(id, s -> ids[s] == id);
+    }
+
+    private User materialise(int slot) {
+        byte[][] fields = readRecord(addresses[slot]);
+        return new User(ids[slot], string(fields[0]), string(fields[1]), string(fields[2]));
+    }
+
+    private boolean emailEquals(int slot, byte[] email) {
+        long address = addresses[slot];
+        ByteBuffer chunk = chunks.get((int) (address >>> CHUNK_BITS));
+        int pos = (int) (address & (CHUNK_SIZE - 1)) + 4;
+        if (chunk.getInt(pos) != email.length) {
+            return false;
+        }
+        for (int i = 0; i < email.length; i++) {
+            if (chunk.get(pos + 4 + i) != email[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Afegeix el registre (slot i els tres strings) al final de l'arena i retorna l'adreça
+    private long append(int slot, byte[] email, byte[] fullName, byte[] password) {
+        int length = 16 + length(email) + length(fullName) + length(password);
+        if (length > CHUNK_SIZE) {
+            throw new IllegalArgumentException("User record too large: " + length + " bytes");
+        }
+        ByteBuffer chunk = reserve(length);
+        long address = ((long) tail << CHUNK_BITS) | chunk.position();
+        chunk.putInt(slot);
+        putString(chunk, email);
+        putString(chunk, fullName);
+        putString(chunk, password);
+        return address;
+    }
+
+    // Tros on caben length bytes més (n'obre un de nou si l'actual és ple) i els compta com a vius
+    private ByteBuffer reserve(int length) {
+        ByteBuffer chunk = tail < 0 ? null : chunks.get(tail);
+        if (chunk == null || chunk.remaining() < length) {
+            chunk = offHeap ? ByteBuffer.allocateDirect(CHUNK_SIZE) : ByteBuffer.allocate(CHUNK_SIZE);
+            if (freeChunkCount > 0) {
+                tail = freeChunks[--freeChunkCount];
+                chunks.set(tail, chunk);
+            } else {
+                tail = chunks.size();
+                chunks.add(chunk);
+                if (tail == chunkLive.length) {
+                    chunkLive = Arrays.copyOf(chunkLive, tail * 2);
+                }
+            }
+            chunkLive[tail] = 0;
+        }
+        chunkLive[tail] += length;
+        usedBytes += length;
+        liveBytes += length;
+        return chunk;
+    }
+
+    // El registre d'address ja no el fa servir cap slot (s'ha sobreescrit o esborrat l'usuari)
+    private void releaseRecord(long address) {
+        int length = recordLength(address);
+        chunkLive[(int) (address >>> CHUNK_BITS)] -= length;
+        liveBytes -= length;
+    }
+
+    // Només llegeix les tres longituds, sense copiar els strings
+    private int recordLength(long address) {
+        return recordLength(chunks.get((int) (address >>> CHUNK_BITS)), (int) (address & (CHUNK_SIZE - 1)));
+    }
+
+    private static int recordLength(ByteBuffer chunk, int pos) {
+        int end = pos + 4;
+        for (int i = 0; i < 3; i++) {
+            end += 4 + Math.max(0, chunk.getInt(end));
+        }
+        return end - pos;
+    }
+
+    // Llegeix els tres strings (email, fullName, password) d'un registre de l'arena
+    private byte[][] readRecord(long address) {
+        ByteBuffer chunk = chunks.get((int) (address >>> CHUNK_BITS));
+        int pos = (int) (address & (CHUNK_SIZE - 1)) + 4;
+        byte[][] fields = new byte[3][];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = readBytes(chunk, pos);
+            pos += 4 + length(fields[i]);
+        }
+        return fields;
+    }
+
+    // Quan més de la meitat de l'arena són registres antics, es compacta el tros amb menys bytes vius:
+    // els seus registres vius es copien (de ByteBuffer a ByteBuffer) al tros actual i el tros s'allibera.
+    // Només un tros per escriptura, perquè el lock d'escriptura no bloquegi les lectures més del que costa
+    // copiar 4 MB; les escriptures següents continuen fins que tornen a ser vius més de la meitat dels bytes.
+    private void compactIfNeeded() {
+        if (usedBytes < 4L * CHUNK_SIZE || liveBytes * 2 > usedBytes) {
+            return;
+        }
+        int victim = -1;
+        for (int c = 0; c < chunks.size(); c++) {
+            if (c != tail && chunks.get(c) != null && (victim < 0 || chunkLive[c] < chunkLive[victim])) {
+                victim = c;
+            }
+        }
+        if (victim < 0) {
+            return;
+        }
+        ByteBuffer chunk = chunks.get(victim);
+        int end = chunk.position();
+        for (int pos = 0; pos < end; ) {
+            int slot = chunk.getInt(pos);
+            int length = recordLength(chunk, pos);
+            // El registre és viu si el seu slot encara hi apunta
+            if (addresses[slot] == (((long) victim << CHUNK_BITS) | pos)) {
+                ByteBuffer target = reserve(length);
+                int targetPos = target.position();
+                target.put(targetPos, chunk, pos, length).position(targetPos + length);
+                addresses[slot] = ((long) tail << CHUNK_BITS) | targetPos;
+            }
+            pos += length;
+        }
+        liveBytes -= chunkLive[victim];
+        usedBytes -= end;
+        chunks.set(victim, null);
+        if (freeChunkCount == freeChunks.length) {
+            freeChunks = Arrays.copyOf(freeChunks, freeChunkCount * 2);
+        }
+        freeChunks[freeChunkCount++] = victim;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slots == ids.length) {
+            int capacity = ids.length + (ids.length >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            addresses = Arrays.copyOf(addresses, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            emailHashes = Arrays.copyOf(emailHashes, capacity);
+        }
+        return slots++;
+    }
+
+    private void releaseSlot(int slot) {
+        // Perquè la compactació no prengui el registre antic per viu
+        addresses[slot] = -1;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] b) {
+        return b == null ? 0 : b.length;
+    }
+
+    private static void putString(ByteBuffer chunk, byte[] b) {
+        if (b == null) {
+            chunk.putInt(-1);
+        } else {
+            chunk.putInt(b.length).put(b);
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer chunk, int pos) {
+        int length = chunk.getInt(pos);
+        if (length < 0) {
+            return null;
+        }
+        byte[] b = new byte[length];
+        chunk.get(pos + 4, b);
+        return b;
+    }
+
+    private static String string(byte[] b) {
+        return b == null ? null : new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,14 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// Es llança quan es vol desar un usuari amb un email que ja fa servir un altre usuari.
+// Spring la converteix automàticament en un 409 Conflict.
+@ResponseStatus(HttpStatus.CONFLICT)
+public class DuplicateEmailException extends RuntimeException {
+
+    public DuplicateEmailException(String email) {
+        super("Email already in use: " + email);
+    }
+}
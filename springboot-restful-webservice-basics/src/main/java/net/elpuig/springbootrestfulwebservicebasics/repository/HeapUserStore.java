@@ -0,0 +1,103 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+// Emmagatzematge per defecte (users.storage=heap): un objecte User per usuari a col·leccions concurrents
+class HeapUserStore implements UserStore {
+
+    // Un usuari i la seva versió, per poder-los llegir junts de manera atòmica
+    private record Entry(User user, long version) {
+    }
+
+    // Mapa concurrent per emmagatzemar usuaris indexats per id (cerca en O(1))
+    private final Map<Long, Entry> users = new ConcurrentHashMap<>();
+
+    // Vista ordenada dels ids, per poder paginar i recórrer els usuaris en ordre
+    private final NavigableSet<Long> orderedIds = new ConcurrentSkipListSet<>();
+
+    // Índex secundari únic: email -> id
+    private final Map<String, Long> emailIndex = new ConcurrentHashMap<>();
+
+    @Override
+    public User get(long id) {
+        Entry entry = users.get(id);
+        return entry == null ? null : entry.user();
+    }
+
+    @Override
+    public long version(long id) {
+        Entry entry = users.get(id);
+        return entry == null ? -1 : entry.version();
+    }
+
+    @Override
+    public Long idForEmail(String email) {
+        return emailIndex.get(email);
+    }
+
+    @Override
+    public User put(User user, long version) {
+        Entry previousEntry = users.put(user.id(), new Entry(user, version));
+        User previous = previousEntry == null ? null : previousEntry.user();
+        orderedIds.add(user.id());
+        // Si l'usuari ja existia i ha canviat d'email, alliberem l'email antic
+        if (previous != null && previous.email() != null && !previous.email().equals(user.email())) {
+            emailIndex.remove(previous.email(), previous.id());
+        }
+        if (user.email() != null) {
+            emailIndex.put(user.email(), user.id());
+        }
+        return previous;
+    }
+
+    @Override
+    public User remove(long id) {
+        Entry entry = users.remove(id);
+        User removed = entry == null ? null : entry.user();
+        if (removed != null) {
+            orderedIds.remove(id);
+            if (removed.email() != null) {
+                emailIndex.remove(removed.email(), removed.id());
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public List<User> after(Long after, int limit) {
+        NavigableSet<Long> ids = after == null ? orderedIds : orderedIds.tailSet(after, false);
+        List<User> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Long id : ids) {
+            if (page.size() >= limit) {
+                break;
+            }
+            User user = get(id);
+            // Pot ser que l'usuari s'hagi esborrat mentre recorríem la vista
+            if (user != null) {
+                page.add(user);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public Stream<User> stream() {
+        return orderedIds.stream()
+                .map(this::get)
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public int size() {
+        return users.size();
+    }
+}
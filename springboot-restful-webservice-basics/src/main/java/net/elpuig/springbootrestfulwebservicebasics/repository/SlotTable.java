@@ -0,0 +1,100 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+
+// Taula de hash amb adreçament obert (sondeig lineal) que guarda números de slot (int).
+// No guarda les claus: qui la fa servir passa el hash i una funció per comparar el slot
+// amb la clau que busca, així les claus poden viure en columnes primitives o en bytes.
+final class SlotTable {
+
+    private static final int EMPTY = -1;
+
+    private int[] table;
+    private int mask;
+    private int size;
+
+    SlotTable(int capacity) {
+        int n = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+        table = new int[n];
+        Arrays.fill(table, EMPTY);
+        mask = n - 1;
+    }
+
+    // El slot que compleix "matches", o -1
+    int find(long hash, IntPredicate matches) {
+        int i = home(hash);
+        while (true) {
+            int slot = table[i];
+            if (slot == EMPTY) {
+                return -1;
+            }
+            if (matches.test(slot)) {
+                return slot;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    // "hashOf" retorna el hash de qualsevol slot guardat (cal per fer créixer la taula)
+    void insert(long hash, int slot, IntToLongFunction hashOf) {
+        if ((size + 1) * 4L > table.length * 3L) {
+            grow(hashOf);
+        }
+        int i = home(hash);
+        while (table[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot;
+        size++;
+    }
+
+    // Esborra el slot i desplaça cap enrere els que venen darrere, així no calen marques d'esborrat
+    void remove(long hash, int slot, IntToLongFunction hashOf) {
+        int i = home(hash);
+        while (table[i] != slot) {
+            if (table[i] == EMPTY) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == EMPTY) {
+                break;
+            }
+            int k = home(hashOf.applyAsLong(table[j]));
+            // Només movem l'entrada j al forat i si la seva posició ideal k no és entre i i j
+            boolean movable = i <= j ? (k <= i || k > j) : (k <= i && k > j);
+            if (movable) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = EMPTY;
+        size--;
+    }
+
+    private void grow(IntToLongFunction hashOf) {
+        int[] old = table;
+        table = new int[old.length * 2];
+        Arrays.fill(table, EMPTY);
+        mask = table.length - 1;
+        for (int slot : old) {
+            if (slot != EMPTY) {
+                int i = home(hashOf.applyAsLong(slot));
+                while (table[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = slot;
+            }
+        }
+    }
+
+    private int home(long hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
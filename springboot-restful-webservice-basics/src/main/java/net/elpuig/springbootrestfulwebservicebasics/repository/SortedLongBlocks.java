@@ -0,0 +1,213 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import java.util.Arrays;
+
+// Conjunt ordenat de long guardat en blocs de long[] ordenats (com una llista de pàgines d'un B-tree).
+// Inserir o esborrar només mou elements dins d'un bloc, i no hi ha cap objecte per element.
+// El primer bloc comença petit i creix fins a BLOCK, així un conjunt amb pocs valors ocupa poc
+// (UserSearchIndex en té un per cada n-grama).
+// No és thread-safe: qui el fa servir el protegeix amb el seu lock.
+final class SortedLongBlocks {
+
+    private static final int BLOCK = 1024;
+    private static final int FIRST_BLOCK = 4;
+
+    private long[][] blocks = new long[0][];
+    private int[] sizes = new int[0];
+    private int count;
+    private int size;
+
+    boolean add(long value) {
+        if (count == 0) {
+            insertBlock(0, new long[FIRST_BLOCK], 0);
+        }
+        int b = blockFor(value);
+        long[] block = blocks[b];
+        int pos = Arrays.binarySearch(block, 0, sizes[b], value);
+        if (pos >= 0) {
+            return false;
+        }
+        pos = -pos - 1;
+        if (sizes[b] == block.length) {
+            block = blocks[b] = Arrays.copyOf(block, Math.min(BLOCK, block.length * 2));
+        }
+        size++;
+        System.arraycopy(block, pos, block, pos + 1, sizes[b] - pos);
+        block[pos] = value;
+        if (++sizes[b] == BLOCK) {
+            // Bloc ple: el partim en dos
+            long[] right = new long[BLOCK];
+            int half = BLOCK / 2;
+            System.arraycopy(block, half, right, 0, BLOCK - half);
+            sizes[b] = half;
+            insertBlock(b + 1, right, BLOCK - half);
+        }
+        return true;
+    }
+
+    boolean remove(long value) {
+        if (count == 0) {
+            return false;
+        }
+        int b = blockFor(value);
+        long[] block = blocks[b];
+        int pos = Arrays.binarySearch(block, 0, sizes[b], value);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(block, pos + 1, block, pos, sizes[b] - pos - 1);
+        size--;
+        if (--sizes[b] == 0) {
+            System.arraycopy(blocks, b + 1, blocks, b, count - b - 1);
+            System.arraycopy(sizes, b + 1, sizes, b, count - b - 1);
+            blocks[--count] = null;
+        }
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Copia a "dest" com a màxim dest.length valors més grans que "after" (tots si after és null).
+    // Retorna quants n'ha copiat.
+    int copyAfter(Long after, long[] dest) {
+        if (count == 0) {
+            return 0;
+        }
+        int b = 0;
+        int pos = 0;
+        if (after != null) {
+            b = blockFor(after);
+            pos = Arrays.binarySearch(blocks[b], 0, sizes[b], after);
+            pos = pos >= 0 ? pos + 1 : -pos - 1;
+        }
+        int n = 0;
+        while (b < count && n < dest.length) {
+            int take = Math.min(sizes[b] - pos, dest.length - n);
+            System.arraycopy(blocks[b], pos, dest, n, take);
+            n += take;
+            b++;
+            pos = 0;
+        }
+        return n;
+    }
+
+    // Copia a "dest" com a màxim dest.length valors més grans que "after" (tots si after és null) que són
+    // a tots els conjunts de "sets". Retorna quants n'ha copiat.
+    // Cada conjunt salta directament al primer valor >= el candidat actual (leapfrog), així el cost depèn de
+    // quantes vegades els conjunts "es creuen" i no de la mida de cap d'ells. Va més de pressa si sets[0] és el més petit.
+    static int intersect(SortedLongBlocks[] sets, Long after, long[] dest) {
+        Cursor[] cursors = new Cursor[sets.length];
+        for (int i = 0; i < sets.length; i++) {
+            if (sets[i].count == 0) {
+                return 0;
+            }
+            cursors[i] = sets[i].new Cursor();
+        }
+        Cursor first = cursors[0];
+        if (after != null ? !first.seekAfter(after) : !first.valid()) {
+            return 0;
+        }
+        long candidate = first.value();
+        int n = 0;
+        int agreed = 1;
+        int i = 1;
+        while (true) {
+            if (agreed == cursors.length) {
+                dest[n++] = candidate;
+                if (n == dest.length || !cursors[0].seekAfter(candidate)) {
+                    return n;
+                }
+                candidate = cursors[0].value();
+                agreed = 1;
+                i = 1;
+                continue;
+            }
+            Cursor cursor = cursors[i % cursors.length];
+            if (!cursor.seek(candidate)) {
+                return n;
+            }
+            if (cursor.value() == candidate) {
+                agreed++;
+            } else {
+                // Aquest conjunt no té el candidat: el seu valor següent és el nou candidat
+                candidate = cursor.value();
+                agreed = 1;
+            }
+            i++;
+        }
+    }
+
+    // Posició dins del conjunt que només avança
+    private final class Cursor {
+
+        private int b;
+        private int pos;
+
+        boolean valid() {
+            return b < count;
+        }
+
+        long value() {
+            return blocks[b][pos];
+        }
+
+        // Avança fins al primer valor >= target. false si no n'hi ha cap
+        boolean seek(long target) {
+            if (!valid() || value() >= target) {
+                return valid();
+            }
+            if (blocks[b][sizes[b] - 1] < target) {
+                b = blockFor(target);
+                if (blocks[b][sizes[b] - 1] < target) {
+                    // target és més gran que tots els valors d'aquest bloc: és el primer del següent
+                    b++;
+                    pos = 0;
+                    return valid();
+                }
+                pos = 0;
+            }
+            int found = Arrays.binarySearch(blocks[b], pos, sizes[b], target);
+            pos = found >= 0 ? found : -found - 1;
+            return true;
+        }
+
+        // Avança fins al primer valor > target
+        boolean seekAfter(long target) {
+            if (target == Long.MAX_VALUE) {
+                b = count;
+                return false;
+            }
+            return seek(target + 1);
+        }
+    }
+
+    // L'últim bloc que comença amb un valor <= value (o el primer)
+    private int blockFor(long value) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (blocks[mid][0] <= value) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private void insertBlock(int at, long[] block, int size) {
+        if (count == blocks.length) {
+            int capacity = Math.max(4, count * 2);
+            blocks = Arrays.copyOf(blocks, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        System.arraycopy(blocks, at, blocks, at + 1, count - at);
+        System.arraycopy(sizes, at, sizes, at + 1, count - at);
+        blocks[at] = block;
+        sizes[at] = size;
+        count++;
+    }
+}
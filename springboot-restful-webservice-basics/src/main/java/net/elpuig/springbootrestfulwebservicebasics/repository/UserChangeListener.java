@@ -0,0 +1,14 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+
+// Rep cada canvi del UserRepository, en el mateix ordre en què s'apliquen.
+// Es crida amb el lock d'escriptura del repositori agafat: ha de ser ràpid i no pot llançar excepcions.
+public interface UserChangeListener {
+
+    // S'ha desat "user". "previous" és la versió anterior, o null si l'usuari és nou
+    void saved(User previous, User user, long version);
+
+    // S'ha esborrat "removed"
+    void deleted(User removed, long version);
+}
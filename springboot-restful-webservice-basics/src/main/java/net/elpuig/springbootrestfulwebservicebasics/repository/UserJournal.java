@@ -0,0 +1,324 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import jakarta.annotation.PreDestroy;
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Persistència opcional del UserRepository: un journal (write-ahead log) on s'afegeix
+// cada save/deleteById, i snapshots compactades periòdiques.
+//
+// Fitxers dins de users.persistence.dir:
+//   wal-N.log       registres escrits a partir del segment N
+//   snapshot-N.dat  estat complet dels usuaris en el moment de començar el segment N
+// Per recuperar l'estat es llegeix la snapshot més recent (mapejada a memòria) i
+// després els segments wal-N.log amb N igual o més gran.
+@Component
+public class UserJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(UserJournal.class);
+
+    private static final Pattern WAL_FILE = Pattern.compile("wal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.dat");
+
+    private final boolean enabled;
+    private final Path dir;
+    private final boolean syncWrites;
+    private final long flushIntervalMs;
+    private final long snapshotIntervalSeconds;
+
+    // Registres pendents d'escriure al disc. Es protegeix amb bufferLock
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(64 * 1024);
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream(64 * 1024);
+    private final ReentrantLock bufferLock = new ReentrantLock();
+
+    // Només un fil escriu i fa fsync al segment actual (ioLock)
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private FileChannel channel;
+    private long segment;
+
+    // Número de seqüència de l'últim registre afegit i de l'últim que ja és al disc
+    private long appendedSeq;
+    private volatile long durableSeq;
+    // Seqüència inclosa a l'última snapshot (-1 si cal fer-ne una encara que no hi hagi escriptures noves)
+    private long snapshotSeq;
+
+    private Supplier<Stream<User>> snapshotSource;
+    private ScheduledExecutorService scheduler;
+
+    public UserJournal(@Value("${users.persistence.enabled:false}") boolean enabled,
+                       @Value("${users.persistence.dir:data/users}") String dir,
+                       @Value("${users.persistence.sync-writes:true}") boolean syncWrites,
+                       @Value("${users.persistence.flush-interval-ms:10}") long flushIntervalMs,
+                       @Value("${users.persistence.snapshot-interval-seconds:300}") long snapshotIntervalSeconds) {
+        this.enabled = enabled;
+        this.dir = Paths.get(dir);
+        this.syncWrites = syncWrites;
+        this.flushIntervalMs = flushIntervalMs;
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Reconstrueix l'estat: la snapshot més recent i després els segments del journal
+    void recover(UserLogFormat.Handler handler) {
+        try {
+            Files.createDirectories(dir);
+            long start = System.nanoTime();
+            long snapshot = latest(SNAPSHOT_FILE);
+            List<Long> segments = list(WAL_FILE);
+            long records = 0;
+            if (snapshot >= 0) {
+                records += UserLogFormat.read(snapshotFile(snapshot), handler);
+            }
+            long replayed = 0;
+            for (long n : segments) {
+                if (n >= snapshot) {
+                    replayed += UserLogFormat.read(walFile(n), handler);
+                }
+            }
+            records += replayed;
+            // Si s'ha hagut de reproduir el journal, la propera snapshot el compactarà
+            snapshotSeq = replayed > 0 ? -1 : 0;
+            // Sempre escrivim en un segment nou: si l'últim té la cua tallada, no s'hi torna a escriure
+            segment = Math.max(snapshot, segments.isEmpty() ? 0 : segments.get(segments.size() - 1)) + 1;
+            channel = openSegment(segment);
+            log.info("Recovered {} user log records from {} in {} ms", records, dir,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot recover users from " + dir, e);
+        }
+    }
+
+    // Arrenca el flush periòdic i les snapshots. "users" ha de recórrer l'estat actual del repositori
+    void start(Supplier<Stream<User>> users) {
+        snapshotSource = users;
+        scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "user-journal");
+            t.setDaemon(true);
+            return t;
+        });
+        if (flushIntervalMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        if (snapshotIntervalSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(this::snapshotQuietly, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    // S'han de cridar amb el lock d'escriptura del repositori agafat, perquè l'ordre del journal
+    // sigui el mateix que l'ordre en què s'han aplicat els canvis.
+    long appendSave(User user) {
+        return append(UserLogFormat.encodeSave(user));
+    }
+
+    long appendDelete(long id) {
+        return append(UserLogFormat.encodeDelete(id));
+    }
+
+    private long append(byte[] record) {
+        bufferLock.lock();
+        try {
+            pending.write(record, 0, record.length);
+            return ++appendedSeq;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    // Espera que el registre "seq" sigui al disc (group commit).
+    // El primer fil que arriba escriu i fa fsync de tot el que hi ha pendent, i els registres
+    // dels altres fils que esperaven queden gravats amb el mateix fsync.
+    void awaitDurable(long seq) {
+        if (!syncWrites || durableSeq >= seq) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write user journal", e);
+        }
+    }
+
+    private void flush() throws IOException {
+        ioLock.lock();
+        try {
+            flushLocked();
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    // Cal tenir ioLock
+    private void flushLocked() throws IOException {
+        ByteArrayOutputStream toWrite;
+        long seq;
+        bufferLock.lock();
+        try {
+            if (pending.size() == 0) {
+                return;
+            }
+            toWrite = pending;
+            pending = spare;
+            spare = toWrite;
+            seq = appendedSeq;
+        } finally {
+            bufferLock.unlock();
+        }
+        toWrite.writeTo(Channels.newOutputStream(channel));
+        toWrite.reset();
+        channel.force(false);
+        durableSeq = seq;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            log.error("Cannot flush user journal", e);
+        }
+    }
+
+    // Escriu una snapshot compactada i esborra els fitxers que ja no calen.
+    // Primer es comença un segment nou, i després es recorre l'estat sense bloquejar les escriptures:
+    // la snapshot pot contenir canvis posteriors a l'inici del segment, però tornar-los a aplicar
+    // en recuperar l'estat dona el mateix resultat.
+    void snapshot() throws IOException {
+        long base;
+        ioLock.lock();
+        try {
+            flushLocked();
+            // Després del flush, durableSeq és l'últim registre afegit
+            if (durableSeq == snapshotSeq) {
+                return;
+            }
+            snapshotSeq = durableSeq;
+            channel.close();
+            base = ++segment;
+            channel = openSegment(base);
+        } finally {
+            ioLock.unlock();
+        }
+
+        Path tmp = dir.resolve("snapshot-" + base + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(out), 1024 * 1024);
+             Stream<User> all = snapshotSource.get()) {
+            Iterator<User> it = all.iterator();
+            while (it.hasNext()) {
+                stream.write(UserLogFormat.encodeSave(it.next()));
+            }
+            stream.flush();
+            out.force(true);
+        }
+        Files.move(tmp, snapshotFile(base), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (long n : list(SNAPSHOT_FILE)) {
+            if (n < base) {
+                Files.deleteIfExists(snapshotFile(n));
+            }
+        }
+        for (long n : list(WAL_FILE)) {
+            if (n < base) {
+                Files.deleteIfExists(walFile(n));
+            }
+        }
+        log.info("Wrote user snapshot {}", snapshotFile(base));
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            log.error("Cannot write user snapshot", e);
+        }
+    }
+
+    // En aturar l'aplicació es grava tot el pendent i es deixa una snapshot, així la propera arrencada
+    // només ha de llegir la snapshot
+    @PreDestroy
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        if (scheduler != null) {
+            // No interrompem els fils: un fil interromput mentre escriu tancaria el FileChannel
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (snapshotSource != null) {
+            snapshot();
+        }
+        ioLock.lock();
+        try {
+            flushLocked();
+            channel.close();
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(long n) throws IOException {
+        return FileChannel.open(walFile(n), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path walFile(long n) {
+        return dir.resolve("wal-" + n + ".log");
+    }
+
+    private Path snapshotFile(long n) {
+        return dir.resolve("snapshot-" + n + ".dat");
+    }
+
+    private long latest(Pattern pattern) throws IOException {
+        List<Long> numbers = list(pattern);
+        return numbers.isEmpty() ? -1 : numbers.get(numbers.size() - 1);
+    }
+
+    // Números dels fitxers que coincideixen amb el patró, ordenats
+    private List<Long> list(Pattern pattern) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                Matcher m = pattern.matcher(file.getFileName().toString());
+                if (m.matches()) {
+                    numbers.add(Long.parseLong(m.group(1)));
+                }
+            });
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+}
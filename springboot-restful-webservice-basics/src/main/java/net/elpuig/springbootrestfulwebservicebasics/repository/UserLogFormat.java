@@ -0,0 +1,149 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Format binari dels fitxers del journal (wal-*.log) i de les snapshots (snapshot-*.dat).
+// Cada registre és: [int longitud][int crc32][payload]
+// i el payload és: [byte tipus][long id] i, si és un SAVE, email, fullName i password
+// com a [int longitud o -1 si és null][bytes UTF-8].
+final class UserLogFormat {
+
+    static final byte SAVE = 1;
+    static final byte DELETE = 2;
+
+    private static final int HEADER = 8;
+    // Un registre més gran que això vol dir que el fitxer està malmès
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+    // Mida de cada finestra mapejada a memòria quan es llegeix un fitxer
+    private static final long WINDOW = 256L * 1024 * 1024;
+
+    // Què fer amb cada registre llegit
+    interface Handler {
+        void save(User user);
+
+        void delete(long id);
+    }
+
+    private UserLogFormat() {
+    }
+
+    static byte[] encodeSave(User user) {
+        byte[] email = bytes(user.email());
+        byte[] fullName = bytes(user.fullName());
+        byte[] password = bytes(user.password());
+        int payload = 1 + 8 + 12 + length(email) + length(fullName) + length(password);
+        ByteBuffer buf = frame(payload);
+        buf.put(SAVE).putLong(user.id());
+        putString(buf, email);
+        putString(buf, fullName);
+        putString(buf, password);
+        return seal(buf, payload);
+    }
+
+    static byte[] encodeDelete(long id) {
+        int payload = 1 + 8;
+        ByteBuffer buf = frame(payload);
+        buf.put(DELETE).putLong(id);
+        return seal(buf, payload);
+    }
+
+    // Llegeix tots els registres d'un fitxer mapejant-lo a memòria per finestres.
+    // Si troba un registre incomplet o amb un crc incorrecte (una escriptura tallada per una caiguda)
+    // s'atura allà: tot el que hi ha abans és vàlid.
+    static long read(Path file, Handler handler) throws IOException {
+        long records = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            CRC32 crc = new CRC32();
+            while (position < size) {
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position));
+                int consumed = 0;
+                while (buf.remaining() >= HEADER) {
+                    int length = buf.getInt();
+                    int checksum = buf.getInt();
+                    if (length <= 0 || length > MAX_RECORD) {
+                        return records;
+                    }
+                    if (buf.remaining() < length) {
+                        break;
+                    }
+                    ByteBuffer payload = buf.slice(buf.position(), length);
+                    crc.reset();
+                    crc.update(payload.duplicate());
+                    if ((int) crc.getValue() != checksum) {
+                        return records;
+                    }
+                    decode(payload, handler);
+                    buf.position(buf.position() + length);
+                    consumed = buf.position();
+                    records++;
+                }
+                if (consumed == 0) {
+                    // Ni un sol registre sencer en aquesta finestra: és la cua tallada del fitxer
+                    return records;
+                }
+                position += consumed;
+            }
+        }
+        return records;
+    }
+
+    private static void decode(ByteBuffer payload, Handler handler) {
+        byte type = payload.get();
+        long id = payload.getLong();
+        if (type == SAVE) {
+            handler.save(new User(id, getString(payload), getString(payload), getString(payload)));
+        } else if (type == DELETE) {
+            handler.delete(id);
+        }
+    }
+
+    private static ByteBuffer frame(int payload) {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + payload);
+        buf.putInt(payload).putInt(0);
+        return buf;
+    }
+
+    private static byte[] seal(ByteBuffer buf, int payload) {
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), HEADER, payload);
+        buf.putInt(4, (int) crc.getValue());
+        return buf.array();
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] b) {
+        return b == null ? 0 : b.length;
+    }
+
+    private static void putString(ByteBuffer buf, byte[] b) {
+        if (b == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(b.length).put(b);
+        }
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] b = new byte[length];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -1,54 +1,259 @@
 package net.elpuig.springbootrestfulwebservicebasics.repository;
 
+import net.elpuig.springbootrestfulwebservicebasics.model.BatchSummary;
 import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
-import javax.swing.text.html.Option;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 @Repository
 public class UserRepository {
 
-    // Llista en memòria per emmagatzemar usuaris
-    private final List<User> users = new ArrayList<>();
+    // On es guarden els usuaris: indexats per id, per email i en ordre d'id (users.storage=heap|compact)
+    private final UserStore store;
 
-    // Constructor per inicializar amb dades d'exemple
-    public UserRepository() {
-        // Afegim alguns usuaris d'exemple
-        users.add(new User(1L, "user1@exemple.com", "User One", "password1"));
-        users.add(new User(2L, "user2@exemple.com", "User Two", "password2"));
-        users.add(new User(3L, "user3@exemple.com", "User Three", "password3"));
+    // Les escriptures (comprovar l'email + desar + journal) es fan en exclusió mútua.
+    // Les lectures no necessiten aquest lock: el store ja és segur per llegir des de qualsevol fil.
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Journal al disc (només si users.persistence.enabled=true)
+    private final UserJournal journal;
+
+    // Versió global: augmenta amb cada save/deleteById. Cada usuari guarda la versió global
+    // del moment en què es va desar, així també té una versió pròpia que només creix.
+    private final AtomicLong version = new AtomicLong();
+
+    // Identifica aquesta arrencada: les versions tornen a començar en reiniciar,
+    // i l'epoch evita que una versió d'abans i una d'ara es confonguin
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    // Components que volen saber cada canvi (caches, índexs...)
+    private final List<UserChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Índexs de cerca per email i per nom (GET /api/v0/users/search)
+    private final UserSearchIndex emailIndex;
+    private final UserSearchIndex fullNameIndex;
+
+    // Constructor: si la persistència està activada, recupera les dades guardades al disc.
+    // Les dades d'exemple les afegeix UserService, perquè les contrasenyes s'han de guardar amb hash.
+    public UserRepository(UserJournal journal,
+                          @Value("${users.storage:heap}") String storage,
+                          @Value("${users.storage.off-heap:false}") boolean offHeap,
+                          @Value("${users.search.substrings:#{null}}") Boolean substrings) {
+        this.journal = journal;
+        boolean compact = "compact".equalsIgnoreCase(storage);
+        this.store = compact ? new CompactUserStore(offHeap) : new HeapUserStore();
+        // Per defecte, amb compact no hi ha índex de trigrames: ocuparia més memòria que els mateixos usuaris
+        boolean trigrams = substrings != null ? substrings : !compact;
+        // Els índexs es registren abans de recuperar les dades, així també s'omplen durant la recuperació
+        this.emailIndex = new UserSearchIndex(User::email, store::get, trigrams);
+        this.fullNameIndex = new UserSearchIndex(User::fullName, store::get, trigrams);
+        listeners.add(emailIndex);
+        listeners.add(fullNameIndex);
+        if (journal.isEnabled()) {
+            journal.recover(new UserLogFormat.Handler() {
+                @Override
+                public void save(User user) {
+                    apply(user);
+                }
+
+                @Override
+                public void delete(long id) {
+                    remove(id);
+                }
+            });
+            journal.start(this::stream);
+        }
+    }
+
+    // Nombre d'usuaris guardats
+    public int count() {
+        return store.size();
+    }
+
+    // Versió global del repositori
+    public long version() {
+        return version.get();
     }
 
-    // Obtenir tots els usuaris
+    // Versió d'un usuari, o buit si no existeix
+    public OptionalLong versionOf(Long id) {
+        long v = id == null ? -1 : store.version(id);
+        return v < 0 ? OptionalLong.empty() : OptionalLong.of(v);
+    }
+
+    public String epoch() {
+        return epoch;
+    }
+
+    // Registra un component que vol rebre cada save/deleteById a partir d'ara
+    public void addListener(UserChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    // Obtenir tots els usuaris, ordenats per id
     public List<User> findAll() {
-        return users;
+        List<User> result = new ArrayList<>(store.size());
+        stream().forEach(result::add);
+        return result;
+    }
+
+    // Obtenir com a màxim "limit" usuaris amb id més gran que "after" (paginació per cursor).
+    // Si "after" és null es comença pel principi.
+    public List<User> findAfter(Long after, int limit) {
+        return store.after(after, limit);
+    }
+
+    // Recórrer tots els usuaris en ordre d'id sense copiar-los a una llista
+    public Stream<User> stream() {
+        return store.stream();
     }
 
     // Obtenir un usuari per id
     public Optional<User> findById(Long id) {
-        return users.stream()
-                .filter(user -> user.id() == id)
-                .findFirst();
+        return id == null ? Optional.empty() : Optional.ofNullable(store.get(id));
     }
 
-    // Afegir un nou usuari;
+    // Obtenir un usuari per email fent servir l'índex secundari
+    public Optional<User> findByEmail(String email) {
+        if (email == null) {
+            return Optional.empty();
+        }
+        Long id = store.idForEmail(email);
+        return id == null ? Optional.empty() : findById(id);
+    }
+
+    // Cercar usuaris pel prefix o per una subcadena d'un camp, com a màxim "limit",
+    // sense recórrer tots els usuaris (veure UserSearchIndex per a l'ordre dels resultats)
+    public List<User> search(UserSearchField field, String query, int limit) {
+        UserSearchIndex index = field == UserSearchField.EMAIL ? emailIndex : fullNameIndex;
+        List<User> result = new ArrayList<>();
+        for (long id : index.search(query, limit)) {
+            // Un usuari esborrat just després de cercar ja no es retorna
+            User user = store.get(id);
+            if (user != null) {
+                result.add(user);
+            }
+        }
+        return result;
+    }
+
+    // Afegir un nou usuari o actualitzar-ne un d'existent (upsert atòmic)
     public User save(User user) {
-        Optional<User> existingUser = findById(user.id());
-        if (existingUser.isPresent()) {
-            // Si existeix, l'eliminem per després afegir-ne la versió actualitzada
-            users.removeIf(u -> u.equals(user));
+        long seq = 0;
+        writeLock.lock();
+        try {
+            upsert(user);
+            if (journal.isEnabled()) {
+                seq = journal.appendSave(user);
+            }
+        } finally {
+            writeLock.unlock();
         }
-        users.add(user);
+        // Esperem el fsync fora del lock, perquè altres escriptures puguin compartir el mateix fsync
+        awaitDurable(seq);
         return user;
     }
 
+    // Desar un lot d'usuaris agafant el lock una sola vegada.
+    // Els usuaris amb un email duplicat es rebutgen sense aturar la resta del lot.
+    public BatchSummary saveAll(List<User> batch) {
+        int inserted = 0;
+        int updated = 0;
+        int rejected = 0;
+        long seq = 0;
+        writeLock.lock();
+        try {
+            for (User user : batch) {
+                try {
+                    if (upsert(user)) {
+                        inserted++;
+                    } else {
+                        updated++;
+                    }
+                    if (journal.isEnabled()) {
+                        seq = journal.appendSave(user);
+                    }
+                } catch (DuplicateEmailException e) {
+                    rejected++;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        // Un sol fsync per tot el lot
+        awaitDurable(seq);
+        return new BatchSummary(inserted, updated, rejected);
+    }
+
+    // Desa l'usuari i manté els índexs. S'ha de cridar amb el lock agafat.
+    // Retorna true si l'usuari és nou i false si n'ha substituït un d'existent.
+    private boolean upsert(User user) {
+        // L'email ha de ser únic: si el fa servir un altre usuari, rebutgem el canvi
+        if (user.email() != null) {
+            Long owner = store.idForEmail(user.email());
+            if (owner != null && owner != user.id()) {
+                throw new DuplicateEmailException(user.email());
+            }
+        }
+        return apply(user);
+    }
+
+    // Aplica un usuari a totes les estructures sense comprovar l'email.
+    // Es fa servir directament en recuperar l'estat del disc, on el journal ja està validat.
+    private boolean apply(User user) {
+        // La versió global s'actualitza després de desar: qui llegeixi la versió nova ja veurà les dades noves
+        long next = version.get() + 1;
+        User previous = store.put(user, next);
+        version.set(next);
+        for (UserChangeListener listener : listeners) {
+            listener.saved(previous, user, next);
+        }
+        return previous == null;
+    }
+
+    // Eliminar un usuari per id. Retorna true si l'usuari existia
     public boolean deleteById(Long id) {
-        int sizeBefore = users.size();
-        users.removeIf(user -> user.id() == id);
-        return sizeBefore == users.size();
+        long seq = 0;
+        writeLock.lock();
+        try {
+            if (!remove(id)) {
+                return false;
+            }
+            if (journal.isEnabled()) {
+                seq = journal.appendDelete(id);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(seq);
+        return true;
+    }
+
+    private boolean remove(long id) {
+        User removed = store.remove(id);
+        if (removed == null) {
+            return false;
+        }
+        long next = version.incrementAndGet();
+        for (UserChangeListener listener : listeners) {
+            listener.deleted(removed, next);
+        }
+        return true;
+    }
+
+    private void awaitDurable(long seq) {
+        if (seq > 0) {
+            journal.awaitDurable(seq);
+        }
     }
 
 }
@@ -0,0 +1,29 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import java.util.Optional;
+
+// Camps dels usuaris on es pot cercar (GET /api/v0/users/search?field=)
+public enum UserSearchField {
+    EMAIL("email"),
+    FULL_NAME("fullName");
+
+    private final String param;
+
+    UserSearchField(String param) {
+        this.param = param;
+    }
+
+    public String param() {
+        return param;
+    }
+
+    // El camp pel seu nom al paràmetre de la petició ("email" o "fullName")
+    public static Optional<UserSearchField> fromParam(String param) {
+        for (UserSearchField field : values()) {
+            if (field.param.equalsIgnoreCase(param)) {
+                return Optional.of(field);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,198 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+// Índex de cerca d'un camp dels usuaris (email o fullName). El UserRepository el manté a cada
+// save/deleteById, així una cerca no ha de recórrer tots els usuaris:
+//   - prefixos: un ConcurrentSkipListSet ordenat per (valor, id); un prefix és un tailSet.
+//     El valor es guarda en minúscules com a bytes UTF-8 (l'ordre dels bytes és el dels caràcters)
+//   - subcadenes: per cada trigrama (3 caràcters seguits) el conjunt ordenat d'ids que el contenen.
+//     Es fa la intersecció dels conjunts de tots els trigrames de la consulta, començant pel més petit,
+//     i només els ids que hi són a tots es comproven amb el valor de l'usuari.
+// L'índex no guarda cap altra còpia del valor: el valor anterior arriba amb cada canvi, i per comprovar
+// una subcadena es llegeix l'usuari del store.
+// La cerca no distingeix majúscules de minúscules.
+final class UserSearchIndex implements UserChangeListener {
+
+    private static final int PAGE = 512;
+
+    private record Key(byte[] value, long id) {
+    }
+
+    private static final Comparator<Key> ORDER = (a, b) -> {
+        int c = Arrays.compareUnsigned(a.value(), b.value());
+        return c != 0 ? c : Long.compare(a.id(), b.id());
+    };
+
+    private final Function<User, String> field;
+    private final LongFunction<User> users;
+    private final boolean substrings;
+
+    private final ConcurrentSkipListSet<Key> sorted = new ConcurrentSkipListSet<>(ORDER);
+
+    // Els conjunts de trigrames no són thread-safe: els protegeix aquest lock
+    private final Map<Long, SortedLongBlocks> trigrams = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // "users" retorna l'usuari actual amb un id (o null), per comprovar les subcadenes
+    UserSearchIndex(Function<User, String> field, LongFunction<User> users, boolean substrings) {
+        this.field = field;
+        this.users = users;
+        this.substrings = substrings;
+    }
+
+    @Override
+    public void saved(User previous, User user, long version) {
+        String value = valueOf(user);
+        String old = previous == null ? null : valueOf(previous);
+        if (value == null ? old == null : value.equals(old)) {
+            return;
+        }
+        if (old != null) {
+            unindex(user.id(), old);
+        }
+        if (value != null) {
+            index(user.id(), value);
+        }
+    }
+
+    @Override
+    public void deleted(User removed, long version) {
+        String old = valueOf(removed);
+        if (old != null) {
+            unindex(removed.id(), old);
+        }
+    }
+
+    // Ids dels usuaris que contenen "query", com a màxim "limit", en un ordre fix:
+    // primer els que comencen per "query" (ordenats pel valor i després per id)
+    // i després els que el contenen en una altra posició (ordenats per id).
+    // Les consultes de menys de 3 caràcters només busquen prefixos.
+    List<Long> search(String query, int limit) {
+        String q = normalise(query);
+        if (q == null || q.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        byte[] prefix = utf8(q);
+        Set<Long> result = new LinkedHashSet<>();
+        for (Key key : sorted.tailSet(new Key(prefix, Long.MIN_VALUE))) {
+            if (result.size() == limit || !startsWith(key.value(), prefix)) {
+                break;
+            }
+            result.add(key.id());
+        }
+        if (result.size() < limit && substrings && q.length() >= 3) {
+            long[] page = new long[PAGE];
+            Long cursor = null;
+            int n = PAGE;
+            while (result.size() < limit && n == PAGE) {
+                // Cada pàgina de candidats es copia amb el lock agafat i es comprova sense el lock
+                lock.readLock().lock();
+                try {
+                    SortedLongBlocks[] postings = postings(q);
+                    n = postings == null ? 0 : SortedLongBlocks.intersect(postings, cursor, page);
+                } finally {
+                    lock.readLock().unlock();
+                }
+                for (int i = 0; i < n && result.size() < limit; i++) {
+                    User user = users.apply(page[i]);
+                    String value = user == null ? null : valueOf(user);
+                    // Els prefixos ja hi són tots: aquí només afegim les coincidències d'enmig
+                    if (value != null && !value.startsWith(q) && value.contains(q)) {
+                        result.add(page[i]);
+                    }
+                }
+                if (n > 0) {
+                    cursor = page[n - 1];
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    // Els conjunts d'ids dels trigrames de la consulta, del més petit al més gran, o null si algun no existeix
+    private SortedLongBlocks[] postings(String q) {
+        List<SortedLongBlocks> postings = new ArrayList<>(q.length() - 2);
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            SortedLongBlocks posting = trigrams.get(trigram(q, i));
+            if (posting == null) {
+                return null;
+            }
+            if (!postings.contains(posting)) {
+                postings.add(posting);
+            }
+        }
+        postings.sort(Comparator.comparingInt(SortedLongBlocks::size));
+        return postings.toArray(new SortedLongBlocks[0]);
+    }
+
+    private void index(long id, String value) {
+        sorted.add(new Key(utf8(value), id));
+        if (!substrings) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i + 3 <= value.length(); i++) {
+                trigrams.computeIfAbsent(trigram(value, i), t -> new SortedLongBlocks()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void unindex(long id, String value) {
+        sorted.remove(new Key(utf8(value), id));
+        if (!substrings) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i + 3 <= value.length(); i++) {
+                long t = trigram(value, i);
+                SortedLongBlocks posting = trigrams.get(t);
+                if (posting != null && posting.remove(id) && posting.size() == 0) {
+                    trigrams.remove(t);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private String valueOf(User user) {
+        return normalise(field.apply(user));
+    }
+
+    // Els tres caràcters (16 bits cadascun) en un sol long
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static boolean startsWith(byte[] value, byte[] prefix) {
+        return value.length >= prefix.length && Arrays.equals(value, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String normalise(String s) {
+        return s == null ? null : s.toLowerCase(Locale.ROOT);
+    }
+}
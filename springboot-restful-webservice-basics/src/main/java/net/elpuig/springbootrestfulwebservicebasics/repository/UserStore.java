@@ -0,0 +1,35 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+// On es guarden físicament els usuaris del UserRepository.
+// El repositori serialitza les escriptures (put/remove) amb el seu lock; les lectures
+// poden arribar des de qualsevol fil en qualsevol moment.
+interface UserStore {
+
+    // L'usuari amb aquest id, o null si no existeix
+    User get(long id);
+
+    // Versió de l'usuari (la versió global del repositori quan es va desar per últim cop), o -1 si no existeix
+    long version(long id);
+
+    // Id de l'usuari que té aquest email, o null si no el té ningú
+    Long idForEmail(String email);
+
+    // Desa l'usuari amb la seva versió i manté els índexs. Retorna l'usuari anterior o null si és nou
+    User put(User user, long version);
+
+    // Esborra l'usuari. Retorna l'usuari esborrat o null si no existia
+    User remove(long id);
+
+    // Com a màxim "limit" usuaris amb id més gran que "after" (null = des del principi), en ordre d'id
+    List<User> after(Long after, int limit);
+
+    // Tots els usuaris en ordre d'id, sense copiar-los a una llista
+    Stream<User> stream();
+
+    int size();
+}
@@ -1,44 +1,240 @@
 package net.elpuig.springbootrestfulwebservicebasics.resource;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import net.elpuig.springbootrestfulwebservicebasics.controller.UserController;
+import net.elpuig.springbootrestfulwebservicebasics.model.BulkResult;
+import net.elpuig.springbootrestfulwebservicebasics.model.PasswordCheck;
+import net.elpuig.springbootrestfulwebservicebasics.model.PasswordVerification;
 import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import net.elpuig.springbootrestfulwebservicebasics.model.UserChange;
+import net.elpuig.springbootrestfulwebservicebasics.model.UserChangeResync;
+import net.elpuig.springbootrestfulwebservicebasics.model.UserPage;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserSearchField;
+import net.elpuig.springbootrestfulwebservicebasics.service.PasswordHashingBusyException;
+import net.elpuig.springbootrestfulwebservicebasics.service.UserChangeFeed;
+import net.elpuig.springbootrestfulwebservicebasics.service.UserChangeFeedBusyException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.autoconfigure.web.embedded.TomcatVirtualThreadsWebServerFactoryCustomizer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/v0/users")
 public class UserResource {
+    // Mida de pàgina per defecte i màxima de la paginació per cursor
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    // Mida per defecte i màxima de cada lot de la càrrega massiva
+    public static final int DEFAULT_BULK_BATCH_SIZE = 1000;
+    public static final int MAX_BULK_BATCH_SIZE = 10000;
+
+    // Resultats per defecte de la cerca
+    public static final int DEFAULT_SEARCH_LIMIT = 20;
+
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final UserController userController;
+    private final ObjectMapper objectMapper;
 
+    // El temps de cada endpoint ja el mesura Spring (http.server.requests{uri=...}), també el de les
+    // respostes asíncrones i en streaming: aquí no cal cap temporitzador
     @Autowired
-    public UserResource(UserController userController) {
+    public UserResource(UserController userController, ObjectMapper objectMapper) {
         this.userController = userController;
+        this.objectMapper = objectMapper;
     }
 
-    // GET /api/v0/users
+    // GET /api/v0/users - Retorna tots els usuaris
+    // GET /api/v0/users?after={id}&limit={n} - Retorna una pàgina d'usuaris a partir del cursor "after"
+    // La resposta porta un ETag amb la versió del repositori: si el client envia If-None-Match
+    // amb la mateixa versió, es respon 304 Not Modified sense llegir ni serialitzar cap usuari.
+    // La llista sencera s'escriu directament des del JSON guardat a UserJsonCache
     @GetMapping
-    public List<User> getAllUsers() {
-        return userController.getAllUsers();
+    public ResponseEntity<?> getAllUsers(@RequestParam(required = false) Long after,
+                                         @RequestParam(required = false) Integer limit,
+                                         WebRequest request) {
+        // La versió es llegeix abans que les dades: com a molt l'ETag serà més antic que el cos, mai més nou
+        String etag = userController.getUsersVersionTag();
+        if (after == null && limit == null) {
+            if (request.checkNotModified(etag)) {
+                return null;
+            }
+            return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON)
+                    .body(userController.getAllUsersJson());
+        }
+        int size = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        etag = etag + "-" + after + "-" + size;
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        List<User> users = userController.getUsersAfter(after, size);
+        // Si la pàgina és plena pot haver-hi més usuaris: el cursor és l'últim id retornat
+        Long next = users.size() == size ? users.get(users.size() - 1).id() : null;
+        return ResponseEntity.ok().eTag(etag).body(new UserPage(users, next));
+    }
+
+    // GET /api/v0/users/stream?format=ndjson|json - Escriu tots els usuaris a la resposta a mesura que es llegeixen,
+    // sense construir la llista sencera a memòria
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamUsers(@RequestParam(defaultValue = "ndjson") String format) {
+        boolean ndjson = !"json".equalsIgnoreCase(format);
+        StreamingResponseBody body = out -> {
+            try (Stream<User> users = userController.streamUsers();
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                if (ndjson) {
+                    // NDJSON: un objecte JSON per línia
+                    generator.setRootValueSeparator(null);
+                } else {
+                    generator.writeStartArray();
+                }
+                Iterator<User> it = users.iterator();
+                while (it.hasNext()) {
+                    generator.writeObject(it.next());
+                    if (ndjson) {
+                        generator.writeRaw('\n');
+                    }
+                }
+                if (!ndjson) {
+                    generator.writeEndArray();
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    // GET /api/v0/users/changes?since={epoch-seq} - Els canvis dels usuaris a mesura que passen (Server-Sent Events).
+    // Cada save/delete és un esdeveniment "saved" o "deleted" amb id "epoch-seq", en ordre.
+    // since (o la capçalera Last-Event-ID que envia EventSource en reconnectar) és l'id de l'últim esdeveniment
+    // rebut o l'ETag de GET /api/v0/users: es continua just després, sense perdre'n cap.
+    // Si els canvis que falten ja no es guarden, o el client llegeix massa lent, rep un esdeveniment "resync"
+    // i ha de tornar a llegir GET /api/v0/users. Sense since només arriben els canvis d'ara endavant
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> changes(@RequestParam(required = false) String since,
+                                              @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        // Sense timeout: la connexió dura mentre el client hi sigui (els heartbeats detecten quan ja no hi és)
+        SseEmitter emitter = new SseEmitter(0L);
+        try {
+            userController.subscribeToChanges(since != null ? since : lastEventId, new SseSink(emitter));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    // Escriu els esdeveniments del feed com a Server-Sent Events
+    private record SseSink(SseEmitter emitter) implements UserChangeFeed.Sink {
+
+        @Override
+        public void change(String id, UserChange change) throws IOException {
+            emitter.send(SseEmitter.event().id(id).name(change.type()).data(change, MediaType.APPLICATION_JSON));
+        }
+
+        @Override
+        public void resync(String id, UserChangeResync resync) throws IOException {
+            emitter.send(SseEmitter.event().id(id).name("resync").data(resync, MediaType.APPLICATION_JSON));
+        }
+
+        @Override
+        public void heartbeat() throws IOException {
+            emitter.send(SseEmitter.event().comment("heartbeat"));
+        }
+
+        @Override
+        public void close() {
+            emitter.complete();
+        }
     }
 
-    // GET /api/v0/users/{id} - Retorna un usuari per ID
+    // GET /api/v0/users/search?q={text}&field=email|fullName&limit={n} - Cerca usuaris pel prefix o per una
+    // subcadena del camp, amb els índexs del repositori. Primer surten els que comencen per "q"
+    @GetMapping("/search")
+    public ResponseEntity<List<User>> searchUsers(@RequestParam String q,
+                                                  @RequestParam(defaultValue = "email") String field,
+                                                  @RequestParam(defaultValue = "" + DEFAULT_SEARCH_LIMIT) int limit) {
+        Optional<UserSearchField> searchField = UserSearchField.fromParam(field);
+        if (searchField.isEmpty() || q.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(userController.searchUsers(searchField.get(), q.strip(), size));
+    }
+
+    // GET /api/v0/users?email= - Retorna un usuari pel seu email
+    @GetMapping(params = "email")
+    public ResponseEntity<User> getUserByEmail(@RequestParam String email) {
+        return userController.getUserByEmail(email).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+
+    // GET /api/v0/users/{id} - Retorna un usuari per ID, amb un ETag amb la versió de l'usuari.
+    // El cos és el JSON guardat a UserJsonCache, sense passar per Jackson
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUserById(@PathVariable Long id) {
-        return userController.getUserById(id).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<byte[]> getUserById(@PathVariable Long id, WebRequest request) {
+        Optional<String> etag = userController.getUserVersionTag(id);
+        if (etag.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(etag.get())) {
+            return null;
+        }
+        return userController.getUserJsonById(id)
+                .map(json -> ResponseEntity.ok().eTag(etag.get()).contentType(MediaType.APPLICATION_JSON).body(json))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     // POST /api/v0/users - Afegir un nou usuari
+    // La contrasenya es converteix en hash en un pool a part; mentrestant el fil de Tomcat queda lliure
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public User createUser(@RequestBody User user) {
+    public CompletableFuture<User> createUser(@RequestBody User user) {
         return userController.saveUSer(user);
     }
 
+    // POST /api/v0/users/{id}/verify - Comprovar la contrasenya d'un usuari
+    @PostMapping("/{id}/verify")
+    public CompletableFuture<ResponseEntity<PasswordVerification>> verifyPassword(@PathVariable Long id,
+                                                                                 @RequestBody PasswordCheck check) {
+        return userController.verifyPassword(id, check.password())
+                .map(result -> result.thenApply(valid -> ResponseEntity.ok(new PasswordVerification(valid))))
+                .orElse(CompletableFuture.completedFuture(ResponseEntity.notFound().build()));
+    }
+
+    // POST /api/v0/users/bulk - Carregar usuaris des d'un cos NDJSON (un usuari per línia)
+    // El cos es llegeix en streaming i es desa en lots; la resposta és el resum de cada lot
+    @PostMapping("/bulk")
+    public BulkResult importUsers(InputStream body,
+                                  @RequestParam(defaultValue = "" + DEFAULT_BULK_BATCH_SIZE) int batchSize) throws IOException {
+        return userController.importUsers(body, Math.max(1, Math.min(batchSize, MAX_BULK_BATCH_SIZE)));
+    }
+
+    // Si el pool de hash de contrasenyes està saturat: 503 i que el client ho torni a provar d'aquí a 1 segon
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<Void> hashingBusy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+    // Massa clients connectats a /changes: 503 i que el client ho torni a provar d'aquí a 5 segons
+    @ExceptionHandler(UserChangeFeedBusyException.class)
+    public ResponseEntity<Void> changeFeedBusy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+    }
+
     // DELETE /api/v0/users/{id} - Esborrar un usuari per ID
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteUser(@PathVariable Long id) {
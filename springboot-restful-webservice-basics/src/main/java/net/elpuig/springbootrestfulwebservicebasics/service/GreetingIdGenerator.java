@@ -0,0 +1,99 @@
+package net.elpuig.springbootrestfulwebservicebasics.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Ids de salutació únics entre instàncies i reinicis, sense parlar amb cap altra instància (estil Snowflake).
+// Un id de 63 bits és:
+//   [41 bits: mil·lisegons des de EPOCH][12 bits: seqüència dins del mil·lisegon][10 bits: node]
+// Cada instància té un node diferent (greeting.ids.node, 0-1023), així dues instàncies mai generen el mateix id.
+//
+// Els 53 bits alts (temps + seqüència) són un sol AtomicLong: cada id és un getAndIncrement,
+// que no espera mai cap altre fil (wait-free). Si en un mil·lisegon es demanen més de 4096 ids, la seqüència
+// passa al mil·lisegon següent: els ids continuen sent únics i creixents, però van per davant del rellotge.
+// Si el rellotge va enrere (NTP), el comptador no retrocedeix mentre l'aplicació està en marxa.
+//
+// No es guarda res al disc: després d'un reinici el comptador torna a començar a l'hora del rellotge.
+// Perquè no es repeteixin ids, en aturar-se s'espera que el rellotge passi l'últim id donat (awaitClock).
+// No queda cobert si l'aplicació cau mentre els ids van per davant, ni si entre l'aturada i l'arrencada
+// el rellotge va enrere més del que ha durat el reinici.
+@Component
+public class GreetingIdGenerator {
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    // 2025-01-01T00:00:00Z: amb 41 bits hi ha ids fins a l'any 2094
+    static final long EPOCH = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+
+    private final long node;
+    // (mil·lisegons des de EPOCH << SEQUENCE_BITS) | seqüència del següent id
+    private final AtomicLong next;
+    // Mil·lisegons de l'època Unix (System.currentTimeMillis; als tests, un rellotge que es mou a mà)
+    private final LongSupplier clock;
+
+    @Autowired
+    public GreetingIdGenerator(MeterRegistry registry, @Value("${greeting.ids.node:0}") int node) {
+        this(registry, node, System::currentTimeMillis);
+    }
+
+    GreetingIdGenerator(MeterRegistry registry, int node, LongSupplier clock) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("greeting.ids.node must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        this.node = node;
+        this.clock = clock;
+        this.next = new AtomicLong(floor());
+        // Mil·lisegons que els ids van per davant del rellotge (0 si no s'han demanat més de 4096 ids/ms)
+        Gauge.builder("greeting.ids.ahead", this, GreetingIdGenerator::aheadMillis)
+                .baseUnit("milliseconds").register(registry);
+    }
+
+    public long nextId() {
+        // Com a molt un intent de portar el comptador al mil·lisegon actual (un cop per mil·lisegon, de fet).
+        // Si falla és que un altre fil l'ha mogut: l'id que surt és igualment únic
+        long floor = floor();
+        long current = next.get();
+        if (current < floor) {
+            next.compareAndSet(current, floor);
+        }
+        return next.getAndIncrement() << NODE_BITS | node;
+    }
+
+    // Parts d'un id (per exemple per saber quan es va crear)
+    public static long timestamp(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    public static int node(long id) {
+        return (int) (id & MAX_NODE);
+    }
+
+    // Espera que el rellotge deixi enrere el mil·lisegon de l'últim id donat: la instància següent amb el mateix
+    // node començarà per sobre. Normalment és com a molt 1 ms; més si els ids anaven per davant
+    @PreDestroy
+    void awaitClock() throws InterruptedException {
+        long last = (next.get() - 1) >>> SEQUENCE_BITS;
+        long wait;
+        while ((wait = last - (clock.getAsLong() - EPOCH)) >= 0) {
+            Thread.sleep(wait + 1);
+        }
+    }
+
+    private double aheadMillis() {
+        return Math.max(0, (next.get() >>> SEQUENCE_BITS) - (clock.getAsLong() - EPOCH));
+    }
+
+    private long floor() {
+        return (clock.getAsLong() - EPOCH) << SEQUENCE_BITS;
+    }
+}
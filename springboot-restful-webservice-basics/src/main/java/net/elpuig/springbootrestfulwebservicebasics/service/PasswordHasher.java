@@ -0,0 +1,175 @@
+package net.elpuig.springbootrestfulwebservicebasics.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Hash de contrasenyes amb PBKDF2 (PBKDF2WithHmacSHA256 del JDK).
+// El càlcul és car a propòsit, així que es fa en un pool de fils propi i acotat:
+// els fils de Tomcat no es queden sense CPU, i si hi ha massa feina pendent la petició es rebutja
+// de seguida (PasswordHashingBusyException -> 503) en lloc d'acumular-se.
+// La càrrega massiva (hashAll) té la seva pròpia quota de fils (users.password.bulk-threads): espera
+// quan l'ha esgotada, però no gasta les places de hash() i verify(), que sempre tenen fils per a elles.
+//
+// Format del hash: pbkdf2$<iteracions>$<salt en base64>$<hash en base64>
+@Component
+public class PasswordHasher {
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadPoolExecutor pool;
+    // Places lliures al pool (fils + cua). Quan s'acaben, hash() i verify() rebutgen la feina
+    private final Semaphore capacity;
+    // Hashos de hashAll que poden estar al pool alhora (com a molt bulkThreads fils)
+    private final Semaphore bulk;
+    private final Timer hashTimer;
+    private final Timer verifyTimer;
+
+    public PasswordHasher(@Value("${users.password.iterations:210000}") int iterations,
+                          @Value("${users.password.threads:0}") int threads,
+                          @Value("${users.password.queue-capacity:256}") int queueCapacity,
+                          @Value("${users.password.bulk-threads:0}") int bulkThreads,
+                          MeterRegistry registry) {
+        this.iterations = iterations;
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "password-hasher-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.capacity = new Semaphore(poolSize + queueCapacity);
+        // Per defecte la meitat dels fils: l'altra meitat queda per a les peticions interactives
+        this.bulk = new Semaphore(bulkThreads > 0 ? Math.min(bulkThreads, poolSize) : Math.max(1, poolSize / 2));
+        this.hashTimer = Timer.builder("users.password.hash").description("Time to hash a password").register(registry);
+        this.verifyTimer = Timer.builder("users.password.verify").description("Time to verify a password").register(registry);
+        Gauge.builder("users.password.queue.depth", pool, p -> p.getQueue().size())
+                .description("Password hashing tasks waiting for a worker").register(registry);
+        Gauge.builder("users.password.active", pool, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashing workers busy").register(registry);
+    }
+
+    // Calcula el hash al pool. Si el pool està ple, llança PasswordHashingBusyException
+    public CompletableFuture<String> hash(String password) {
+        if (!capacity.tryAcquire()) {
+            throw new PasswordHashingBusyException();
+        }
+        return submit(() -> hashTimer.record(() -> hashNow(password)), capacity);
+    }
+
+    // Calcula el hash de moltes contrasenyes (càrrega massiva). En lloc de rebutjar la feina,
+    // espera que quedi lloc a la quota de bulk: és el ritme d'aquests fils el que frena la càrrega.
+    // Si s'interromp el fil mentre espera, llança CancellationException
+    public List<String> hashAll(List<String> passwords) {
+        List<CompletableFuture<String>> futures = new ArrayList<>(passwords.size());
+        for (String password : passwords) {
+            if (password == null) {
+                futures.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            try {
+                bulk.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the password hashing pool");
+            }
+            futures.add(submit(() -> hashTimer.record(() -> hashNow(password)), bulk));
+        }
+        List<String> hashes = new ArrayList<>(futures.size());
+        for (CompletableFuture<String> future : futures) {
+            hashes.add(future.join());
+        }
+        return hashes;
+    }
+
+    // Comprova una contrasenya contra un hash guardat, també al pool
+    public CompletableFuture<Boolean> verify(String password, String stored) {
+        if (!capacity.tryAcquire()) {
+            throw new PasswordHashingBusyException();
+        }
+        return submit(() -> verifyTimer.record(() -> matches(password, stored)), capacity);
+    }
+
+    // Envia la feina al pool amb una plaça de "permits" ja agafada, que s'allibera quan acaba.
+    // Si el pool ja no accepta feina (s'està aturant) la plaça s'allibera aquí i es respon com si fos ple
+    private <T> CompletableFuture<T> submit(Supplier<T> task, Semaphore permits) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.get();
+                } finally {
+                    permits.release();
+                }
+            }, pool);
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw new PasswordHashingBusyException();
+        }
+    }
+
+    // Calcula el hash al fil actual (només per a casos puntuals, com les dades d'exemple)
+    public String hashNow(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations);
+        Base64.Encoder b64 = Base64.getEncoder();
+        return PREFIX + "$" + iterations + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(hash);
+    }
+
+    private boolean matches(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4 || !PREFIX.equals(parts[0])) {
+            return false;
+        }
+        Base64.Decoder b64 = Base64.getDecoder();
+        byte[] expected = b64.decode(parts[3]);
+        byte[] actual = pbkdf2(password, b64.decode(parts[2]), Integer.parseInt(parts[1]));
+        // Comparació en temps constant
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
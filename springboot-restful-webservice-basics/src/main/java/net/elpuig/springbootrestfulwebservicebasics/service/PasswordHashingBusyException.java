@@ -0,0 +1,10 @@
+package net.elpuig.springbootrestfulwebservicebasics.service;
+
+// Es llança quan el pool de hash de contrasenyes ja té tota la feina que pot acceptar.
+// UserResource la converteix en un 503 Service Unavailable amb la capçalera Retry-After.
+public class PasswordHashingBusyException extends RuntimeException {
+
+    public PasswordHashingBusyException() {
+        super("Password hashing is saturated, retry later");
+    }
+}
@@ -0,0 +1,241 @@
+package net.elpuig.springbootrestfulwebservicebasics.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import net.elpuig.springbootrestfulwebservicebasics.model.UserChange;
+import net.elpuig.springbootrestfulwebservicebasics.model.UserChangeResync;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserChangeListener;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Canvis del repositori d'usuaris en ordre, per a GET /api/v0/users/changes (Server-Sent Events).
+// Cada save/deleteById és un UserChange amb un número de seqüència: la versió global del repositori,
+// que augmenta d'1 en 1. Un client que ja té els usuaris fins a la versió N només ha de llegir els canvis
+// posteriors a N en lloc de tornar a demanar la llista sencera.
+//
+// Es guarden els últims users.changes.retention canvis en un buffer circular (el canvi "seq" va a la posició
+// seq % retention). El repositori hi escriu amb el seu lock d'escriptura agafat; els clients llegeixen sense lock.
+// Cada client només guarda l'últim seq que ha enviat: si va tan lent que el buffer ja ha sobreescrit els canvis
+// que li falten, rep un "resync" (tornar a llegir GET /api/v0/users) i continua pels canvis nous.
+// Així un client lent mai fa créixer cap cua a memòria.
+//
+// Cada client connectat ocupa un fil d'un pool acotat (users.changes.max-subscribers); quan és ple,
+// subscribe llança UserChangeFeedBusyException (503).
+@Component
+public class UserChangeFeed implements UserChangeListener {
+
+    // On s'envien els canvis d'un client (UserResource hi connecta un SseEmitter).
+    // Si un mètode llança una excepció, el client ja no hi és i la subscripció s'acaba
+    public interface Sink {
+
+        // Un canvi. id és la posició "epoch-seq", que el client pot fer servir com a "since" per continuar
+        void change(String id, UserChange change) throws IOException;
+
+        // El client ha de tornar a llegir tots els usuaris
+        void resync(String id, UserChangeResync resync) throws IOException;
+
+        // No hi ha hagut canvis en un temps: serveix per detectar clients que ja no hi són
+        void heartbeat() throws IOException;
+
+        // La subscripció s'ha acabat (client desconnectat o aplicació aturant-se)
+        void close();
+    }
+
+    private final UserRepository userRepository;
+    private final int retention;
+    private final long heartbeatNanos;
+
+    // Últims canvis: el canvi "seq" és a la posició seq % retention
+    private final AtomicReferenceArray<UserChange> changes;
+    // Seq de l'últim canvi publicat. Es publica després d'escriure'l al buffer
+    private volatile long latest;
+
+    // Els clients que no tenen res per enviar esperen aquí el canvi següent
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private final ThreadPoolExecutor pool;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Counter sent;
+    private final Counter resyncs;
+
+    public UserChangeFeed(UserRepository userRepository,
+                          MeterRegistry registry,
+                          @Value("${users.changes.retention:4096}") int retention,
+                          @Value("${users.changes.max-subscribers:64}") int maxSubscribers,
+                          @Value("${users.changes.heartbeat-seconds:15}") int heartbeatSeconds) {
+        if (retention < 1 || maxSubscribers < 1) {
+            throw new IllegalArgumentException("users.changes.retention and users.changes.max-subscribers must be positive");
+        }
+        this.userRepository = userRepository;
+        this.retention = retention;
+        this.heartbeatNanos = TimeUnit.SECONDS.toNanos(Math.max(1, heartbeatSeconds));
+        this.changes = new AtomicReferenceArray<>(retention);
+        // Es llegeix la versió abans de registrar-se: si entremig hi ha un canvi, el forat es detecta
+        // en llegir-lo (el seq no coincideix) i el client rep un resync, mai un canvi perdut en silenci
+        this.latest = userRepository.version();
+        AtomicInteger counter = new AtomicInteger();
+        // Sense cua: cada client té el seu fil, o no n'hi ha
+        this.pool = new ThreadPoolExecutor(0, maxSubscribers, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "user-changes-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.sent = Counter.builder("users.changes.sent").description("Change events sent to subscribers").register(registry);
+        this.resyncs = Counter.builder("users.changes.resyncs").description("Subscribers told to reload all users").register(registry);
+        Gauge.builder("users.changes.subscribers", subscribers, AtomicInteger::get)
+                .description("Clients connected to the change feed").register(registry);
+        Gauge.builder("users.changes.latest", this, feed -> feed.latest).register(registry);
+        userRepository.addListener(this);
+    }
+
+    // Es crida amb el lock d'escriptura del repositori: només escriu al buffer i desperta els clients
+    @Override
+    public void saved(User previous, User user, long version) {
+        publish(UserChange.saved(version, user));
+    }
+
+    @Override
+    public void deleted(User removed, long version) {
+        publish(UserChange.deleted(version, removed.id()));
+    }
+
+    private void publish(UserChange change) {
+        changes.set(slot(change.seq()), change);
+        lock.lock();
+        try {
+            latest = change.seq();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Comença a enviar canvis a sink des d'un fil del pool i retorna de seguida.
+    // since: "epoch-seq" (l'id de l'últim esdeveniment rebut, o l'ETag de GET /api/v0/users), només "seq"
+    // (d'aquesta mateixa arrencada), o null per rebre només els canvis d'ara endavant.
+    // Llança IllegalArgumentException si since no té aquest format i UserChangeFeedBusyException si el pool és ple
+    public void subscribe(String since, Sink sink) {
+        String reason = null;
+        long cursor = latest;
+        if (since != null && !since.isBlank()) {
+            String position = since.strip().replace("\"", "");
+            int dash = position.lastIndexOf('-');
+            long seq = parseSeq(position.substring(dash + 1), since);
+            boolean sameEpoch = dash < 0 || position.substring(0, dash).equals(userRepository.epoch());
+            if (!sameEpoch || seq > cursor) {
+                reason = "restarted";
+            } else {
+                cursor = seq;
+            }
+        }
+        String initialResync = reason;
+        long start = cursor;
+        try {
+            pool.execute(() -> stream(start, initialResync, sink));
+        } catch (RejectedExecutionException e) {
+            throw new UserChangeFeedBusyException();
+        }
+    }
+
+    private void stream(long start, String initialResync, Sink sink) {
+        subscribers.incrementAndGet();
+        try {
+            long cursor = initialResync == null ? start : resync(sink, initialResync);
+            // Abans del primer canvi enviat, un forat vol dir que el "since" ja no es guarda (expired);
+            // després, que el client no ha llegit prou de pressa (lagged)
+            boolean caughtUp = false;
+            while (!Thread.currentThread().isInterrupted()) {
+                long end = latest;
+                // Els canvis que falten, en ordre. Si algun ja s'ha sobreescrit (o no hi és), resync
+                while (cursor < end) {
+                    UserChange change = changes.get(slot(cursor + 1));
+                    if (change == null || change.seq() != cursor + 1) {
+                        cursor = resync(sink, caughtUp ? "lagged" : "expired");
+                        break;
+                    }
+                    sink.change(id(change.seq()), change);
+                    sent.increment();
+                    cursor++;
+                }
+                caughtUp = true;
+                if (!awaitAfter(cursor)) {
+                    sink.heartbeat();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            // El client ha tancat la connexió
+        } finally {
+            subscribers.decrementAndGet();
+            sink.close();
+        }
+    }
+
+    // Envia un resync amb la posició actual i retorna el seq a partir del qual es continua
+    private long resync(Sink sink, String reason) throws IOException {
+        long seq = latest;
+        resyncs.increment();
+        sink.resync(id(seq), new UserChangeResync(userRepository.epoch(), seq, reason));
+        return seq;
+    }
+
+    // Espera fins que hi ha un canvi posterior a cursor o passa l'interval del heartbeat.
+    // Retorna false si no n'hi ha hagut cap
+    private boolean awaitAfter(long cursor) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = heartbeatNanos;
+            while (latest == cursor) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = changed.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String id(long seq) {
+        return userRepository.epoch() + "-" + seq;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % retention);
+    }
+
+    private static long parseSeq(String seq, String since) {
+        try {
+            long value = Long.parseLong(seq);
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Es llança a sota
+        }
+        throw new IllegalArgumentException("since must be <epoch>-<seq> or <seq>: " + since);
+    }
+
+    // Atura els fils dels clients: cada subscripció s'acaba i tanca la seva connexió
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,10 @@
+package net.elpuig.springbootrestfulwebservicebasics.service;
+
+// Es llança quan ja hi ha users.changes.max-subscribers clients connectats a GET /api/v0/users/changes.
+// UserResource la converteix en un 503 Service Unavailable amb la capçalera Retry-After.
+public class UserChangeFeedBusyException extends RuntimeException {
+
+    public UserChangeFeedBusyException() {
+        super("Too many change feed subscribers, retry later");
+    }
+}
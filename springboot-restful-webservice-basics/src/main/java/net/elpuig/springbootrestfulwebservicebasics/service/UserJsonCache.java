@@ -0,0 +1,226 @@
+package net.elpuig.springbootrestfulwebservicebasics.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserChangeListener;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// Cache del JSON ja serialitzat (byte[]) de cada usuari i de la llista sencera.
+// Cada entrada porta la versió de l'usuari amb què es va serialitzar: si no coincideix amb la versió
+// actual del repositori es torna a serialitzar, així mai es serveix un JSON antic.
+// Els save/deleteById del repositori esborren l'entrada de l'usuari (no la reserialitzen, perquè
+// Jackson no entri al camí d'escriptura ni a les càrregues massives); es torna a omplir en la propera lectura.
+//
+// La memòria està limitada per users.json-cache.max-bytes: el cache es divideix en trossos
+// amb el seu propi lock, i cada tros és un LRU que expulsa les entrades més antigues quan passa del seu límit.
+@Component
+public class UserJsonCache implements UserChangeListener {
+
+    private static final int STRIPES = 16;
+    // Memòria aproximada d'una entrada a més dels bytes del JSON (node del mapa, Long, record)
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private record Entry(long version, byte[] json) {
+    }
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+        long bytes;
+    }
+
+    private final UserRepository userRepository;
+    private final ObjectWriter userWriter;
+    private final long stripeBudget;
+    private final long maxAggregateBytes;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    // JSON de tota la llista i versió global del repositori amb què es va construir
+    private volatile Entry aggregate;
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter aggregateHits;
+    private final Counter aggregateMisses;
+
+    public UserJsonCache(UserRepository userRepository,
+                         ObjectMapper objectMapper,
+                         MeterRegistry registry,
+                         @Value("${users.json-cache.max-bytes:67108864}") long maxBytes,
+                         @Value("${users.json-cache.max-aggregate-bytes:16777216}") long maxAggregateBytes) {
+        this.userRepository = userRepository;
+        this.userWriter = objectMapper.writerFor(User.class);
+        this.stripeBudget = Math.max(0, maxBytes) / STRIPES;
+        this.maxAggregateBytes = maxAggregateBytes;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        hits = Counter.builder("users.json.cache").tag("entry", "user").tag("result", "hit").register(registry);
+        misses = Counter.builder("users.json.cache").tag("entry", "user").tag("result", "miss").register(registry);
+        aggregateHits = Counter.builder("users.json.cache").tag("entry", "list").tag("result", "hit").register(registry);
+        aggregateMisses = Counter.builder("users.json.cache").tag("entry", "list").tag("result", "miss").register(registry);
+        evictions = Counter.builder("users.json.cache.evictions").register(registry);
+        Gauge.builder("users.json.cache.bytes", this, cache -> cache.bytes()).register(registry);
+        userRepository.addListener(this);
+    }
+
+    // JSON d'un usuari, o buit si no existeix
+    public Optional<byte[]> userJson(long id) {
+        // La versió es llegeix abans que l'usuari: les dades seran com a mínim tan noves com la versió
+        OptionalLong version = userRepository.versionOf(id);
+        if (version.isEmpty()) {
+            return Optional.empty();
+        }
+        byte[] json = cached(id, version.getAsLong());
+        if (json != null) {
+            hits.increment();
+            return Optional.of(json);
+        }
+        misses.increment();
+        return userRepository.findById(id).map(user -> store(user, version.getAsLong()));
+    }
+
+    // JSON de tota la llista d'usuaris ordenada per id. Es reconstrueix només quan ha canviat la versió
+    // del repositori, i es fa amb el JSON de cada usuari que ja hi hagi al cache
+    public byte[] allUsersJson() {
+        long version = userRepository.version();
+        Entry current = aggregate;
+        if (current != null && current.version() == version) {
+            aggregateHits.increment();
+            return current.json();
+        }
+        aggregateMisses.increment();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(256, current == null ? 0 : current.json().length));
+        out.write('[');
+        boolean first = true;
+        try (Stream<User> users = userRepository.stream()) {
+            Iterator<User> it = users.iterator();
+            while (it.hasNext()) {
+                // Cada usuari es torna a llegir amb userJson (primer la versió i després les dades):
+                // l'usuari del stream pot ser més antic que la versió que hi ha ara al repositori
+                Optional<byte[]> json = userJson(it.next().id());
+                if (json.isEmpty()) {
+                    continue;
+                }
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.writeBytes(json.get());
+            }
+        }
+        out.write(']');
+        byte[] json = out.toByteArray();
+        // Una llista massa gran no es guarda: per a molts usuaris hi ha la paginació i /stream
+        aggregate = json.length <= maxAggregateBytes ? new Entry(version, json) : null;
+        return json;
+    }
+
+    // Bytes ocupats ara mateix pel JSON dels usuaris (sense comptar la llista)
+    public long bytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void saved(User previous, User user, long version) {
+        if (previous != null) {
+            invalidate(user.id());
+        }
+    }
+
+    @Override
+    public void deleted(User removed, long version) {
+        invalidate(removed.id());
+    }
+
+    private byte[] cached(long id, long version) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            Entry entry = stripe.entries.get(id);
+            return entry != null && entry.version() == version ? entry.json() : null;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private byte[] store(User user, long version) {
+        byte[] json = serialize(user);
+        long size = json.length + ENTRY_OVERHEAD;
+        if (size > stripeBudget) {
+            return json;
+        }
+        Stripe stripe = stripeOf(user.id());
+        stripe.lock.lock();
+        try {
+            Entry old = stripe.entries.get(user.id());
+            // Si algú ja hi ha posat una versió més nova, no la trepitgem
+            if (old != null && old.version() > version) {
+                return json;
+            }
+            stripe.entries.put(user.id(), new Entry(version, json));
+            long delta = size - (old == null ? 0 : old.json().length + ENTRY_OVERHEAD);
+            stripe.bytes += delta;
+            bytes.addAndGet(delta);
+            // LRU: les primeres entrades del LinkedHashMap (ordre d'accés) són les menys usades
+            Iterator<Map.Entry<Long, Entry>> it = stripe.entries.entrySet().iterator();
+            while (stripe.bytes > stripeBudget && it.hasNext()) {
+                long freed = it.next().getValue().json().length + ENTRY_OVERHEAD;
+                it.remove();
+                stripe.bytes -= freed;
+                bytes.addAndGet(-freed);
+                evictions.increment();
+            }
+            return json;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private void invalidate(long id) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            Entry old = stripe.entries.remove(id);
+            if (old != null) {
+                long freed = old.json().length + ENTRY_OVERHEAD;
+                stripe.bytes -= freed;
+                bytes.addAndGet(-freed);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private byte[] serialize(User user) {
+        try {
+            return userWriter.writeValueAsBytes(user);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Stripe stripeOf(long id) {
+        return stripes[(int) ((id * 0x9E3779B97F4A7C15L) >>> 60)];
+    }
+}
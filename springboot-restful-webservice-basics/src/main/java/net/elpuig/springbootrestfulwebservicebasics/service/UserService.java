@@ -1,37 +1,238 @@
 package net.elpuig.springbootrestfulwebservicebasics.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.elpuig.springbootrestfulwebservicebasics.model.BatchSummary;
+import net.elpuig.springbootrestfulwebservicebasics.model.BulkResult;
 import net.elpuig.springbootrestfulwebservicebasics.model.User;
 import net.elpuig.springbootrestfulwebservicebasics.repository.UserRepository;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserSearchField;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
+// @Lazy(false): es crea en arrencar encara que spring.main.lazy-initialization=true (perfil fast-start).
+// Afegir els usuaris d'exemple i recuperar el journal és feina d'arrencada, no de la primera petició
 @Service
+@Lazy(false)
 public class UserService {
     private final UserRepository userRepository;
+    private final PasswordHasher passwordHasher;
+    private final UserJsonCache userJsonCache;
+    // Canvis dels usuaris per a GET /api/v0/users/changes
+    private final UserChangeFeed userChangeFeed;
+    private final ObjectReader userReader;
+
+    // Un temporitzador per mètode (users.service{method=...}), creats un sol cop. Mesuren la feina del servei
+    // (repositori, cache, pool de hash); el temps de tota la petició HTTP ja és a http.server.requests
+    private final Timer getAllUsersTimer;
+    private final Timer getAllUsersJsonTimer;
+    private final Timer getUsersAfterTimer;
+    private final Timer getUserByIdTimer;
+    private final Timer getUserJsonByIdTimer;
+    private final Timer getUserByEmailTimer;
+    private final Timer searchUsersTimer;
+    private final Timer saveUserTimer;
+    private final Timer verifyPasswordTimer;
+    private final Timer deleteUserTimer;
+    private final Timer importUsersTimer;
 
     @Autowired
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, PasswordHasher passwordHasher, UserJsonCache userJsonCache,
+                       UserChangeFeed userChangeFeed, ObjectMapper objectMapper, MeterRegistry registry) {
         this.userRepository = userRepository;
+        this.passwordHasher = passwordHasher;
+        this.userJsonCache = userJsonCache;
+        this.userChangeFeed = userChangeFeed;
+        this.userReader = objectMapper.readerFor(User.class);
+        this.getAllUsersTimer = timer(registry, "getAllUsers");
+        this.getAllUsersJsonTimer = timer(registry, "getAllUsersJson");
+        this.getUsersAfterTimer = timer(registry, "getUsersAfter");
+        this.getUserByIdTimer = timer(registry, "getUserById");
+        this.getUserJsonByIdTimer = timer(registry, "getUserJsonById");
+        this.getUserByEmailTimer = timer(registry, "getUserByEmail");
+        this.searchUsersTimer = timer(registry, "searchUsers");
+        this.saveUserTimer = timer(registry, "saveUser");
+        this.verifyPasswordTimer = timer(registry, "verifyPassword");
+        this.deleteUserTimer = timer(registry, "deleteUser");
+        this.importUsersTimer = timer(registry, "importUsers");
+        Gauge.builder("users.count", userRepository, UserRepository::count).register(registry);
+        if (userRepository.count() == 0) {
+            // Afegim alguns usuaris d'exemple
+            userRepository.save(new User(1L, "user1@exemple.com", "User One", passwordHasher.hashNow("password1")));
+            userRepository.save(new User(2L, "user2@exemple.com", "User Two", passwordHasher.hashNow("password2")));
+            userRepository.save(new User(3L, "user3@exemple.com", "User Three", passwordHasher.hashNow("password3")));
+        }
     }
 
     // Obtenir tots els usuaris
     public List<User> getAllUsers() {
-        return userRepository.findAll();
+        return getAllUsersTimer.record(() -> userRepository.findAll());
+    }
+
+    // Tots els usuaris ja serialitzats en JSON (del cache si no hi ha hagut canvis)
+    public byte[] getAllUsersJson() {
+        return getAllUsersJsonTimer.record(() -> userJsonCache.allUsersJson());
+    }
+
+    // Obtenir una pàgina d'usuaris a partir d'un cursor
+    public List<User> getUsersAfter(Long after, int limit) {
+        return getUsersAfterTimer.record(() -> userRepository.findAfter(after, limit));
+    }
+
+    // Recórrer tots els usuaris en ordre sense carregar-los tots a memòria
+    public Stream<User> streamUsers() {
+        return userRepository.stream();
+    }
+
+    // Etiqueta de versió de tota la llista d'usuaris (per a l'ETag). Canvia amb qualsevol save/delete
+    public String getUsersVersionTag() {
+        return userRepository.epoch() + "-" + userRepository.version();
+    }
+
+    // Enviar a sink els canvis dels usuaris posteriors a since (veure UserChangeFeed.subscribe)
+    public void subscribeToChanges(String since, UserChangeFeed.Sink sink) {
+        userChangeFeed.subscribe(since, sink);
+    }
+
+    // Etiqueta de versió d'un usuari (per a l'ETag), o buit si no existeix
+    public Optional<String> getUserVersionTag(Long id) {
+        OptionalLong version = userRepository.versionOf(id);
+        return version.isPresent()
+                ? Optional.of(userRepository.epoch() + "-" + id + "-" + version.getAsLong())
+                : Optional.empty();
     }
 
     // Obtenir un usuari per ID
     public Optional<User> getUserById(Long id) {
-        return userRepository.findById(id);
+        return getUserByIdTimer.record(() -> userRepository.findById(id));
+    }
+
+    // Cercar usuaris per prefix o subcadena de l'email o del nom
+    public List<User> searchUsers(UserSearchField field, String query, int limit) {
+        return searchUsersTimer.record(() -> userRepository.search(field, query, limit));
     }
 
-    public User saveUser(User user) {
-        return userRepository.save(user);
+    // Un usuari ja serialitzat en JSON (del cache si no ha canviat)
+    public Optional<byte[]> getUserJsonById(Long id) {
+        return getUserJsonByIdTimer.record(() -> userJsonCache.userJson(id));
+    }
+
+    // Obtenir un usuari per email
+    public Optional<User> getUserByEmail(String email) {
+        return getUserByEmailTimer.record(() -> userRepository.findByEmail(email));
+    }
+
+    // Desa l'usuari amb la contrasenya convertida en hash. El hash es calcula al pool de PasswordHasher
+    // i l'usuari es desa quan acaba; si el pool està saturat es llança PasswordHashingBusyException
+    // El temps inclou l'espera al pool de hash, fins que l'usuari queda desat. Els rebutjos (el pool saturat
+    // llança l'excepció abans de retornar el future) també es compten, amb el temps que han trigat
+    public CompletableFuture<User> saveUser(User user) {
+        Timer.Sample sample = Timer.start();
+        CompletableFuture<User> saved;
+        try {
+            saved = user.password() == null
+                    ? CompletableFuture.completedFuture(userRepository.save(user))
+                    : passwordHasher.hash(user.password()).thenApply(hash -> userRepository.save(user.withPassword(hash)));
+        } catch (RuntimeException e) {
+            sample.stop(saveUserTimer);
+            throw e;
+        }
+        return saved.whenComplete((u, e) -> sample.stop(saveUserTimer));
+    }
+
+    // Comprova la contrasenya d'un usuari. Buit si l'usuari no existeix
+    public Optional<CompletableFuture<Boolean>> verifyPassword(long id, String password) {
+        Timer.Sample sample = Timer.start();
+        Optional<CompletableFuture<Boolean>> valid;
+        try {
+            valid = userRepository.findById(id).map(user -> passwordHasher.verify(password, user.password()));
+        } catch (RuntimeException e) {
+            sample.stop(verifyPasswordTimer);
+            throw e;
+        }
+        if (valid.isEmpty()) {
+            sample.stop(verifyPasswordTimer);
+        }
+        return valid.map(future -> future.whenComplete((v, e) -> sample.stop(verifyPasswordTimer)));
     }
 
     public boolean deleteUser(long id) {
-        return userRepository.deleteById(id);
+        return deleteUserTimer.record(() -> userRepository.deleteById(id));
+    }
+
+    // Carregar usuaris des d'un cos NDJSON (un usuari per línia).
+    // El cos es llegeix línia a línia i es desa en lots de "batchSize", de manera que
+    // mai hi ha més d'un lot a memòria. Les línies que no són un usuari vàlid es compten com a rebutjades.
+    public BulkResult importUsers(InputStream body, int batchSize) throws IOException {
+        Timer.Sample sample = Timer.start();
+        try {
+            return readBatches(body, batchSize);
+        } finally {
+            sample.stop(importUsersTimer);
+        }
+    }
+
+    private BulkResult readBatches(InputStream body, int batchSize) throws IOException {
+        List<BatchSummary> batches = new ArrayList<>();
+        List<User> batch = new ArrayList<>(batchSize);
+        int invalid = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                batch.add(userReader.readValue(line));
+            } catch (JsonProcessingException e) {
+                invalid++;
+            }
+            if (batch.size() + invalid >= batchSize) {
+                batches.add(flush(batch, invalid));
+                batch.clear();
+                invalid = 0;
+            }
+        }
+        if (!batch.isEmpty() || invalid > 0) {
+            batches.add(flush(batch, invalid));
+        }
+
+        long inserted = 0, updated = 0, rejected = 0;
+        for (BatchSummary summary : batches) {
+            inserted += summary.inserted();
+            updated += summary.updated();
+            rejected += summary.rejected();
+        }
+        return new BulkResult(batches, inserted, updated, rejected);
+    }
+
+    private static Timer timer(MeterRegistry registry, String method) {
+        return Timer.builder("users.service").tag("method", method).register(registry);
+    }
+
+    private BatchSummary flush(List<User> batch, int invalid) {
+        List<String> hashes = passwordHasher.hashAll(batch.stream().map(User::password).toList());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.set(i, batch.get(i).withPassword(hashes.get(i)));
+        }
+        BatchSummary saved = userRepository.saveAll(batch);
+        return new BatchSummary(saved.inserted(), saved.updated(), saved.rejected() + invalid);
     }
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactUserStoreTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void putGetOverwriteAndRemove(boolean offHeap) {
+        CompactUserStore store = new CompactUserStore(offHeap);
+        assertThat(store.put(new User(1, "anna@exemple.com", "Anna", "secret"), 1)).isNull();
+        assertThat(store.put(new User(2, null, "Sense Email", null), 2)).isNull();
+
+        assertThat(store.get(1)).isEqualTo(new User(1, "anna@exemple.com", "Anna", "secret"));
+        assertThat(store.get(2)).isEqualTo(new User(2, null, "Sense Email", null));
+        assertThat(store.idForEmail("anna@exemple.com")).isEqualTo(1L);
+
+        User previous = store.put(new User(1, "anna.nova@exemple.com", "Anna Nova", "secret"), 3);
+        assertThat(previous.email()).isEqualTo("anna@exemple.com");
+        assertThat(store.idForEmail("anna@exemple.com")).isNull();
+        assertThat(store.idForEmail("anna.nova@exemple.com")).isEqualTo(1L);
+        assertThat(store.version(1)).isEqualTo(3);
+
+        assertThat(store.remove(2).fullName()).isEqualTo("Sense Email");
+        assertThat(store.get(2)).isNull();
+        assertThat(store.version(2)).isEqualTo(-1);
+        assertThat(store.remove(2)).isNull();
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    @Test
+    void afterAndStreamFollowIdOrder() {
+        CompactUserStore store = new CompactUserStore(false);
+        for (long id : new long[]{5, 3, 9, 1, 7}) {
+            store.put(new User(id, "u" + id + "@exemple.com", "User " + id, null), id);
+        }
+        assertThat(store.after(null, 10)).extracting(User::id).containsExactly(1L, 3L, 5L, 7L, 9L);
+        assertThat(store.after(3L, 2)).extracting(User::id).containsExactly(5L, 7L);
+        assertThat(store.stream().map(User::id)).containsExactly(1L, 3L, 5L, 7L, 9L);
+    }
+
+    @Test
+    void slotsReusedAfterRemoveDoNotReviveOldRecords() {
+        CompactUserStore store = new CompactUserStore(false);
+        store.put(new User(1, "a@exemple.com", "A", null), 1);
+        store.remove(1);
+        store.put(new User(2, "b@exemple.com", "B", null), 2);
+        assertThat(store.get(1)).isNull();
+        assertThat(store.idForEmail("a@exemple.com")).isNull();
+        assertThat(store.get(2).fullName()).isEqualTo("B");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void compactionKeepsEveryLiveRecordAndBoundsTheArena(boolean offHeap) {
+        CompactUserStore store = new CompactUserStore(offHeap);
+        int users = 8_000;
+        String padding = "x".repeat(1000);
+        // Cada passada sobreescriu tots els usuaris: sense compactar, l'arena creixeria ~8 MB per passada
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < users; i++) {
+                store.put(new User(i, "user" + i + "@exemple.com", "Round " + round + " " + padding, "pw" + i), round);
+            }
+            // I se n'esborren alguns, perquè els slots lliures es tornin a fer servir
+            for (int i = round; i < users; i += 97) {
+                store.remove(i);
+            }
+        }
+        assertThat(store.arenaBytes()).isLessThan(6L * users * 1040);
+
+        List<User> all = store.after(null, users);
+        assertThat(all).hasSize(store.size());
+        for (User user : all) {
+            int i = (int) user.id();
+            assertThat(user.fullName()).isEqualTo("Round 9 " + padding);
+            assertThat(user.email()).isEqualTo("user" + i + "@exemple.com");
+            assertThat(user.password()).isEqualTo("pw" + i);
+            assertThat(store.idForEmail(user.email())).isEqualTo(user.id());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlotTableTest {
+
+    @Test
+    void findsInsertedSlotsAcrossGrowth() {
+        long[] keys = new long[10_000];
+        SlotTable table = new SlotTable(16);
+        for (int slot = 0; slot < keys.length; slot++) {
+            keys[slot] = slot * 7919L;
+            table.insert(keys[slot], slot, s -> keys[s]);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            long key = keys[slot];
+            assertThat(table.find(key, s -> keys[s] == key)).isEqualTo(slot);
+        }
+        assertThat(table.find(-1, s -> keys[s] == -1)).isEqualTo(-1);
+    }
+
+    @Test
+    void equalHashesAreToldApartByThePredicate() {
+        String[] emails = {"Aa", "BB", "AaAa", "BBBB", "AaBB", "BBAa"};
+        SlotTable table = new SlotTable(16);
+        for (int slot = 0; slot < emails.length; slot++) {
+            table.insert(emails[slot].hashCode(), slot, s -> emails[s].hashCode());
+        }
+        for (int slot = 0; slot < emails.length; slot++) {
+            String email = emails[slot];
+            assertThat(table.find(email.hashCode(), s -> emails[s].equals(email))).isEqualTo(slot);
+        }
+    }
+
+    // Amb moltes col·lisions i esborrats barrejats, el desplaçament cap enrere no ha de perdre cap entrada
+    @Test
+    void removeKeepsTheRestReachable() {
+        Random random = new Random(42);
+        int n = 5_000;
+        // Poques claus diferents de hash: cadenes llargues de sondeig
+        long[] hashes = new long[n];
+        boolean[] present = new boolean[n];
+        SlotTable table = new SlotTable(16);
+        for (int slot = 0; slot < n; slot++) {
+            hashes[slot] = random.nextInt(n / 8);
+            table.insert(hashes[slot], slot, s -> hashes[s]);
+            present[slot] = true;
+        }
+        for (int slot = 0; slot < n; slot += 1 + random.nextInt(3)) {
+            table.remove(hashes[slot], slot, s -> hashes[s]);
+            present[slot] = false;
+        }
+        for (int slot = 0; slot < n; slot++) {
+            int target = slot;
+            int found = table.find(hashes[slot], s -> s == target);
+            assertThat(found).isEqualTo(present[slot] ? slot : -1);
+        }
+    }
+}
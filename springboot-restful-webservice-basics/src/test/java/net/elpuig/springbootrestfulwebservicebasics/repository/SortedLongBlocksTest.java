@@ -0,0 +1,86 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SortedLongBlocksTest {
+
+    @Test
+    void addRemoveAndCopyAfterKeepOrder() {
+        SortedLongBlocks set = new SortedLongBlocks();
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            long value = random.nextInt(50_000);
+            assertThat(set.add(value)).isEqualTo(expected.add(value));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextInt(50_000);
+            assertThat(set.remove(value)).isEqualTo(expected.remove(value));
+        }
+        assertThat(set.size()).isEqualTo(expected.size());
+        assertThat(copyAll(set, null)).containsExactlyElementsOf(expected);
+        assertThat(copyAll(set, 25_000L)).containsExactlyElementsOf(expected.tailSet(25_000L, false));
+    }
+
+    @Test
+    void intersectMatchesSetIntersection() {
+        Random random = new Random(7);
+        // Mides molt diferents, com els trigrames comuns i els rars
+        int[] sizes = {30, 3_000, 20_000};
+        SortedLongBlocks[] sets = new SortedLongBlocks[sizes.length];
+        TreeSet<Long> expected = null;
+        for (int s = 0; s < sizes.length; s++) {
+            sets[s] = new SortedLongBlocks();
+            TreeSet<Long> values = new TreeSet<>();
+            while (values.size() < sizes[s]) {
+                long value = random.nextInt(40_000);
+                values.add(value);
+                sets[s].add(value);
+            }
+            // Uns quants valors a tots els conjunts
+            for (long common = 0; common < 40_000; common += 4_000) {
+                values.add(common);
+                sets[s].add(common);
+            }
+            if (expected == null) {
+                expected = values;
+            } else {
+                expected.retainAll(values);
+            }
+        }
+
+        List<Long> result = new ArrayList<>();
+        long[] page = new long[3];
+        Long cursor = null;
+        int n;
+        while ((n = SortedLongBlocks.intersect(sets, cursor, page)) > 0) {
+            for (int i = 0; i < n; i++) {
+                result.add(page[i]);
+            }
+            cursor = page[n - 1];
+        }
+        assertThat(result).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void intersectWithAnEmptySetIsEmpty() {
+        SortedLongBlocks some = new SortedLongBlocks();
+        some.add(1);
+        assertThat(SortedLongBlocks.intersect(new SortedLongBlocks[]{some, new SortedLongBlocks()}, null, new long[4])).isZero();
+        assertThat(SortedLongBlocks.intersect(new SortedLongBlocks[]{some}, Long.MAX_VALUE, new long[4])).isZero();
+    }
+
+    private static List<Long> copyAll(SortedLongBlocks set, Long after) {
+        long[] all = new long[set.size() + 1];
+        int n = set.copyAfter(after, all);
+        return Arrays.stream(all, 0, n).boxed().toList();
+    }
+}
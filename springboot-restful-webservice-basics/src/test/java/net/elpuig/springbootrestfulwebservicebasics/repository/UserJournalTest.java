@@ -0,0 +1,184 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Cada "restart" crea un UserJournal i un UserRepository nous sobre el mateix directori sense tancar
+// l'anterior, com si l'aplicació hagués caigut: només compta el que ja era al disc.
+class UserJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<UserJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() throws IOException {
+        for (UserJournal journal : journals) {
+            journal.close();
+        }
+    }
+
+    private UserRepository restart(String storage) {
+        // Sense flush ni snapshots periòdiques: els tests les fan quan volen
+        UserJournal journal = new UserJournal(true, dir.toString(), true, 0, 0);
+        journals.add(journal);
+        return new UserRepository(journal, storage, false, false);
+    }
+
+    private static User user(long id) {
+        return new User(id, "user" + id + "@exemple.com", "User " + id, "hash" + id);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "compact"})
+    void restartRecoversEveryAcknowledgedWrite(String storage) {
+        UserRepository repository = restart(storage);
+        for (long id = 1; id <= 100; id++) {
+            repository.save(user(id));
+        }
+        repository.save(new User(7, "seven@exemple.com", "Seven", "hash7"));
+        repository.deleteById(50L);
+
+        UserRepository recovered = restart(storage);
+        assertThat(recovered.count()).isEqualTo(99);
+        assertThat(recovered.findById(50L)).isEmpty();
+        assertThat(recovered.findById(7L)).contains(new User(7, "seven@exemple.com", "Seven", "hash7"));
+        assertThat(recovered.findByEmail("user7@exemple.com")).isEmpty();
+        assertThat(recovered.findAll()).isEqualTo(repository.findAll());
+    }
+
+    @Test
+    void truncatedLastRecordIsDroppedAndLaterWritesSurvive() throws IOException {
+        UserRepository repository = restart("heap");
+        for (long id = 1; id <= 10; id++) {
+            repository.save(user(id));
+        }
+        // Una caiguda a mig escriure l'últim registre
+        Path wal = latestWal();
+        try (RandomAccessFile file = new RandomAccessFile(wal.toFile(), "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        UserRepository recovered = restart("heap");
+        assertThat(recovered.findAll()).extracting(User::id).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+        // Les escriptures noves van a un segment nou, no darrere de la cua tallada
+        recovered.save(user(11));
+        assertThat(latestWal()).isNotEqualTo(wal);
+
+        assertThat(restart("heap").findAll()).extracting(User::id)
+                .containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 11L);
+    }
+
+    @Test
+    void corruptLastRecordIsDropped() throws IOException {
+        UserRepository repository = restart("heap");
+        for (long id = 1; id <= 10; id++) {
+            repository.save(user(id));
+        }
+        // Un byte canviat dins del payload de l'últim registre: el crc ja no coincideix
+        Path wal = latestWal();
+        try (RandomAccessFile file = new RandomAccessFile(wal.toFile(), "rw")) {
+            long position = file.length() - 3;
+            file.seek(position);
+            int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xFF);
+        }
+
+        assertThat(restart("heap").findAll()).extracting(User::id).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "compact"})
+    void snapshotPlusTailReplayAppliesDeletesAfterTheSnapshot(String storage) throws IOException {
+        UserRepository repository = restart(storage);
+        for (long id = 1; id <= 20; id++) {
+            repository.save(user(id));
+        }
+        journals.get(0).snapshot();
+        assertThat(files("snapshot-")).hasSize(1);
+        // Els segments anteriors a la snapshot ja no calen
+        assertThat(files("wal-")).hasSize(1);
+
+        repository.deleteById(3L);
+        repository.deleteById(20L);
+        repository.save(new User(5, "five@exemple.com", "Five", "hash5"));
+        repository.save(user(21));
+        // L'email alliberat per l'usuari 5 el pot fer servir un altre
+        repository.save(new User(22, "user5@exemple.com", "Twenty Two", "hash22"));
+
+        UserRepository recovered = restart(storage);
+        assertThat(recovered.findById(3L)).isEmpty();
+        assertThat(recovered.findById(20L)).isEmpty();
+        assertThat(recovered.findByEmail("user5@exemple.com")).contains(new User(22, "user5@exemple.com", "Twenty Two", "hash22"));
+        assertThat(recovered.findByEmail("five@exemple.com").map(User::id)).contains(5L);
+        assertThat(recovered.findAll()).isEqualTo(repository.findAll());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "compact"})
+    void snapshotTakenWhileWritingRecoversTheFinalState(String storage) throws Exception {
+        UserRepository repository = restart(storage);
+        for (long id = 1; id <= 500; id++) {
+            repository.save(user(id));
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!done.get()) {
+                long id = random.nextLong(1, 600);
+                if (random.nextInt(4) == 0) {
+                    repository.deleteById(id);
+                } else {
+                    // Noms i emails nous, perquè la snapshot vegi usuaris a mig canviar
+                    long n = random.nextLong(1_000_000);
+                    repository.save(new User(id, "u" + id + "-" + n + "@exemple.com", "Name " + n, "hash" + n));
+                }
+            }
+        });
+        writer.start();
+        for (int i = 0; i < 5; i++) {
+            journals.get(0).snapshot();
+            Thread.sleep(20);
+        }
+        done.set(true);
+        writer.join();
+
+        UserRepository recovered = restart(storage);
+        assertThat(recovered.findAll()).isEqualTo(repository.findAll());
+        for (User user : repository.findAll()) {
+            assertThat(recovered.findByEmail(user.email()).map(User::id)).contains(user.id());
+        }
+    }
+
+    private Path latestWal() throws IOException {
+        return files("wal-").stream()
+                .filter(file -> file.toFile().length() > 0)
+                .max(Comparator.comparingLong(file -> Long.parseLong(file.getFileName().toString().replaceAll("\\D", ""))))
+                .orElseThrow();
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).toList();
+        }
+    }
+}
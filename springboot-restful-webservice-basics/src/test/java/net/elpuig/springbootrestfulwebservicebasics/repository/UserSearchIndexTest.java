@@ -0,0 +1,68 @@
+package net.elpuig.springbootrestfulwebservicebasics.repository;
+
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserSearchIndexTest {
+
+    private final Map<Long, User> users = new HashMap<>();
+    private final UserSearchIndex index = new UserSearchIndex(User::fullName, users::get, true);
+
+    private void save(long id, String fullName) {
+        User user = new User(id, null, fullName, null);
+        index.saved(users.put(id, user), user, 0);
+    }
+
+    private void delete(long id) {
+        index.deleted(users.remove(id), 0);
+    }
+
+    @Test
+    void prefixesComeFirstThenSubstringsById() {
+        save(1, "Maria Puig");
+        save(2, "Joan Puigdemont");
+        save(3, "Puig Vila");
+        save(4, "Anna Roig");
+        save(5, "puigcerdà");
+
+        assertThat(index.search("PUIG", 10)).containsExactly(3L, 5L, 1L, 2L);
+        assertThat(index.search("puig", 2)).containsExactly(3L, 5L);
+        assertThat(index.search("pu", 10)).containsExactly(3L, 5L);
+        assertThat(index.search("cerdà", 10)).containsExactly(5L);
+    }
+
+    // Tots els trigrames de "ab cd" hi són, però només un usuari té la subcadena sencera
+    @Test
+    void candidatesWithEveryTrigramAreCheckedAgainstTheValue() {
+        save(1, "xab cdx");
+        save(2, "xab c and xb cd");
+        assertThat(index.search("ab cd", 10)).containsExactly(1L);
+    }
+
+    @Test
+    void renamesAndDeletesLeaveNoStaleEntries() {
+        save(1, "Alice Smith");
+        save(2, "Bob Smith");
+        save(1, "Alice Jones");
+        delete(2);
+
+        assertThat(index.search("smith", 10)).isEmpty();
+        assertThat(index.search("alice", 10)).containsExactly(1L);
+        assertThat(index.search("jones", 10)).containsExactly(1L);
+    }
+
+    @Test
+    void withoutSubstringsOnlyPrefixesMatch() {
+        UserSearchIndex prefixes = new UserSearchIndex(User::fullName, users::get, false);
+        User user = new User(1, null, "Maria Puig", null);
+        users.put(1L, user);
+        prefixes.saved(null, user, 0);
+        assertThat(prefixes.search("maria", 10)).containsExactly(1L);
+        assertThat(prefixes.search("puig", 10)).isEmpty();
+    }
+}
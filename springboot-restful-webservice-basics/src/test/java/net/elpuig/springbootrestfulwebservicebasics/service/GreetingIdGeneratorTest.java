@@ -0,0 +1,133 @@
+package net.elpuig.springbootrestfulwebservicebasics.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+// El rellotge és un AtomicLong que el test mou a mà: l'hora no avança mentre no es digui
+class GreetingIdGeneratorTest {
+
+    private static final long NOW = GreetingIdGenerator.EPOCH + 123_456_789L;
+
+    private final AtomicLong clock = new AtomicLong(NOW);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private GreetingIdGenerator generator(int node) {
+        return new GreetingIdGenerator(registry, node, clock::get);
+    }
+
+    private double ahead() {
+        return registry.get("greeting.ids.ahead").gauge().value();
+    }
+
+    @Test
+    void packsTimeSequenceAndNode() {
+        GreetingIdGenerator ids = generator(5);
+
+        long first = ids.nextId();
+        long second = ids.nextId();
+        // [41 bits: temps][12 bits: seqüència][10 bits: node]
+        assertThat(first).isEqualTo(123_456_789L << 22 | 0L << 10 | 5);
+        assertThat(second).isEqualTo(123_456_789L << 22 | 1L << 10 | 5);
+        assertThat(GreetingIdGenerator.timestamp(first)).isEqualTo(NOW);
+        assertThat(GreetingIdGenerator.node(first)).isEqualTo(5);
+    }
+
+    @Test
+    void roundTripsTimestampAndNode() {
+        for (int node : new int[]{0, 1, 512, GreetingIdGenerator.MAX_NODE}) {
+            long id = generator(node).nextId();
+            assertThat(id).isPositive();
+            assertThat(GreetingIdGenerator.timestamp(id)).isEqualTo(NOW);
+            assertThat(GreetingIdGenerator.node(id)).isEqualTo(node);
+        }
+    }
+
+    @Test
+    void sequenceOverflowCarriesIntoTheNextMillisecond() {
+        GreetingIdGenerator ids = generator(3);
+
+        long last = -1;
+        for (int i = 0; i < 1 << GreetingIdGenerator.SEQUENCE_BITS; i++) {
+            long id = ids.nextId();
+            assertThat(id).isGreaterThan(last);
+            last = id;
+        }
+        assertThat(GreetingIdGenerator.timestamp(last)).isEqualTo(NOW);
+
+        // El 4097è id del mateix mil·lisegon fa servir el següent, amb la seqüència a 0
+        long carried = ids.nextId();
+        assertThat(carried).isGreaterThan(last);
+        assertThat(GreetingIdGenerator.timestamp(carried)).isEqualTo(NOW + 1);
+        assertThat(carried >>> GreetingIdGenerator.NODE_BITS & 0xFFF).isZero();
+        assertThat(GreetingIdGenerator.node(carried)).isEqualTo(3);
+        assertThat(ahead()).isEqualTo(1);
+
+        // Quan el rellotge el passa, torna a seguir l'hora
+        clock.set(NOW + 10);
+        assertThat(GreetingIdGenerator.timestamp(ids.nextId())).isEqualTo(NOW + 10);
+        assertThat(ahead()).isZero();
+    }
+
+    @Test
+    void idsKeepGrowingWhenTheClockGoesBack() {
+        GreetingIdGenerator ids = generator(0);
+        long before = ids.nextId();
+
+        clock.set(NOW - 1_000);
+        long after = ids.nextId();
+        assertThat(after).isGreaterThan(before);
+        assertThat(GreetingIdGenerator.timestamp(after)).isEqualTo(NOW);
+    }
+
+    @Test
+    void shutdownWaitsUntilTheClockPassesTheLastId() throws InterruptedException {
+        GreetingIdGenerator ids = generator(0);
+        for (int i = 0; i < 3 * (1 << GreetingIdGenerator.SEQUENCE_BITS); i++) {
+            ids.nextId();
+        }
+        // L'últim id és de NOW + 2: el rellotge (que aquí sí avança) ha d'arribar a NOW + 3
+        Thread mover = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                clock.incrementAndGet();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        mover.start();
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(5), ids::awaitClock);
+            assertThat(clock.get()).isGreaterThanOrEqualTo(NOW + 3);
+        } finally {
+            mover.interrupt();
+            mover.join();
+        }
+
+        // Un generador nou (la instància següent) comença per sobre de tots els ids d'abans
+        long restarted = new GreetingIdGenerator(new SimpleMeterRegistry(), 0, clock::get).nextId();
+        assertThat(GreetingIdGenerator.timestamp(restarted)).isGreaterThan(NOW + 2);
+    }
+
+    @Test
+    void shutdownDoesNotWaitWithoutIds() {
+        GreetingIdGenerator ids = generator(0);
+
+        // El rellotge no es mou: si esperés, no acabaria
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ids::awaitClock);
+    }
+
+    @Test
+    void rejectsNodesOutOfRange() {
+        assertThatThrownBy(() -> generator(-1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> generator(GreetingIdGenerator.MAX_NODE + 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
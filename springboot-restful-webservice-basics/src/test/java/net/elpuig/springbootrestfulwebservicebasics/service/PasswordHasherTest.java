@@ -0,0 +1,62 @@
+package net.elpuig.springbootrestfulwebservicebasics.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+// Pool de 2 fils sense cua: hash() i verify() tenen 2 places, i hashAll en pot ocupar 1
+class PasswordHasherTest {
+
+    private final PasswordHasher hasher = new PasswordHasher(20_000, 2, 0, 1, new SimpleMeterRegistry());
+
+    @AfterEach
+    void shutdown() {
+        hasher.shutdown();
+    }
+
+    @Test
+    void bulkHashingLeavesRoomForInteractiveRequests() {
+        CompletableFuture<List<String>> bulk = CompletableFuture.supplyAsync(
+                () -> hasher.hashAll(Collections.nCopies(50, "secret")));
+
+        // Mentre dura la càrrega massiva, les dues places de hash() continuen lliures
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<String> first = hasher.hash("one");
+            CompletableFuture<String> second = hasher.hash("two");
+            assertThat(hasher.verify("one", first.join()).join()).isTrue();
+            assertThat(second.join()).startsWith("pbkdf2$20000$");
+        }
+        assertThat(bulk.join()).hasSize(50).allSatisfy(hash -> assertThat(hash).startsWith("pbkdf2$"));
+    }
+
+    @Test
+    void keepsNullPasswordsInBulk() {
+        List<String> hashes = hasher.hashAll(Arrays.asList("a", null, "b"));
+        assertThat(hashes).hasSize(3);
+        assertThat(hashes.get(1)).isNull();
+        assertThat(hasher.verify("b", hashes.get(2)).join()).isTrue();
+    }
+
+    @Test
+    void releasesPermitsWhenThePoolIsShutDown() {
+        hasher.shutdown();
+
+        // Si la plaça no s'alliberés, el segon hashAll es quedaria esperant per sempre
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 0; i < 3; i++) {
+                assertThatThrownBy(() -> hasher.hashAll(List.of("secret"))).isInstanceOf(PasswordHashingBusyException.class);
+                assertThatThrownBy(() -> hasher.hash("secret")).isInstanceOf(PasswordHashingBusyException.class);
+            }
+        });
+    }
+}
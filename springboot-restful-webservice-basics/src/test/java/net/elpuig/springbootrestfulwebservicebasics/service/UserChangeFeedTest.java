@@ -0,0 +1,217 @@
+package net.elpuig.springbootrestfulwebservicebasics.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import net.elpuig.springbootrestfulwebservicebasics.model.UserChange;
+import net.elpuig.springbootrestfulwebservicebasics.model.UserChangeResync;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserJournal;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Cada Sink apunta el que rep com a text ("change 3 saved 3", "resync lagged 12", "heartbeat", "close")
+// i el test ho llegeix en ordre, esperant com a molt uns segons per esdeveniment.
+// Repositori en memòria (sense journal), buffer de 4 canvis i com a molt 2 clients
+class UserChangeFeedTest {
+
+    private static final int RETENTION = 4;
+
+    private final UserRepository repository = new UserRepository(new UserJournal(false, "unused", false, 0, 0), "heap", false, false);
+    private final UserChangeFeed feed = new UserChangeFeed(repository, new SimpleMeterRegistry(), RETENTION, 2, 1);
+
+    @AfterEach
+    void shutdown() {
+        feed.shutdown();
+    }
+
+    private static User user(long id) {
+        return new User(id, "user" + id + "@exemple.com", "User " + id, "hash" + id);
+    }
+
+    private RecordingSink subscribe(String since) {
+        RecordingSink sink = new RecordingSink();
+        feed.subscribe(since, sink);
+        return sink;
+    }
+
+    @Test
+    void sendsChangesAfterSubscribingInOrder() throws InterruptedException {
+        repository.save(user(1));
+        // Rep els canvis posteriors a subscribe, encara que el seu fil comenci més tard
+        RecordingSink sink = subscribe(null);
+        repository.save(user(2));
+        repository.save(user(1));
+        repository.deleteById(2L);
+
+        assertThat(sink.next()).isEqualTo("change 2 saved 2");
+        assertThat(sink.next()).isEqualTo("change 3 saved 1");
+        assertThat(sink.next()).isEqualTo("change 4 deleted 2");
+        assertThat(sink.lastId).isEqualTo(repository.epoch() + "-4");
+    }
+
+    @Test
+    void replaysChangesAfterSince() throws InterruptedException {
+        for (long id = 1; id <= 3; id++) {
+            repository.save(user(id));
+        }
+
+        RecordingSink withEpoch = subscribe(repository.epoch() + "-1");
+        assertThat(withEpoch.next()).isEqualTo("change 2 saved 2");
+        assertThat(withEpoch.next()).isEqualTo("change 3 saved 3");
+
+        // Només el seq (de la mateixa arrencada), i entre cometes com un ETag
+        RecordingSink etag = subscribe("\"2\"");
+        assertThat(etag.next()).isEqualTo("change 3 saved 3");
+    }
+
+    @Test
+    void sinceOlderThanRetentionIsExpired() throws InterruptedException {
+        for (long id = 1; id <= 10; id++) {
+            repository.save(user(id));
+        }
+        RecordingSink sink = subscribe("2");
+
+        assertThat(sink.next()).isEqualTo("resync expired 10");
+        repository.save(user(11));
+        assertThat(sink.next()).isEqualTo("change 11 saved 11");
+    }
+
+    @Test
+    void sinceFromAnotherStartIsRestarted() throws InterruptedException {
+        repository.save(user(1));
+
+        assertThat(subscribe("other-epoch-1").next()).isEqualTo("resync restarted 1");
+        // Una versió que aquesta arrencada encara no ha arribat a tenir
+        assertThat(subscribe("99").next()).isEqualTo("resync restarted 1");
+    }
+
+    @Test
+    void rejectsMalformedSince() {
+        assertThatThrownBy(() -> feed.subscribe("abc", new RecordingSink())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> feed.subscribe("epoch-x", new RecordingSink())).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void slowClientIsToldToResync() throws InterruptedException {
+        RecordingSink sink = subscribe(null);
+        CountDownLatch release = new CountDownLatch(1);
+        sink.blockOnChange = release;
+
+        repository.save(user(1));
+        // El client s'encalla enviant el primer canvi mentre se'n publiquen més dels que hi caben
+        assertThat(sink.next()).isEqualTo("change 1 saved 1");
+        for (long id = 2; id <= 1 + RETENTION + 1; id++) {
+            repository.save(user(id));
+        }
+        sink.blockOnChange = null;
+        release.countDown();
+
+        assertThat(sink.next()).isEqualTo("resync lagged 6");
+        repository.deleteById(3L);
+        assertThat(sink.next()).isEqualTo("change 7 deleted 3");
+    }
+
+    @Test
+    void rejectsSubscribersBeyondTheLimit() {
+        subscribe(null);
+        subscribe(null);
+
+        assertThatThrownBy(() -> feed.subscribe(null, new RecordingSink())).isInstanceOf(UserChangeFeedBusyException.class);
+    }
+
+    @Test
+    void disconnectedClientFreesItsPlace() throws InterruptedException {
+        RecordingSink gone = subscribe(null);
+        subscribe(null);
+        gone.failing = true;
+
+        repository.save(user(1));
+        assertThat(gone.next()).isEqualTo("close");
+        // El fil del client que ha marxat torna al pool (just després de close): hi cap un client nou
+        RecordingSink next = new RecordingSink();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                feed.subscribe("0", next);
+                break;
+            } catch (UserChangeFeedBusyException e) {
+                assertThat(attempt).as("attempts").isLessThan(1000);
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+        }
+        assertThat(next.next()).isEqualTo("change 1 saved 1");
+    }
+
+    @Test
+    void sendsHeartbeatsWhenNothingChanges() throws InterruptedException {
+        RecordingSink sink = subscribe(null);
+
+        assertThat(sink.next()).isEqualTo("heartbeat");
+    }
+
+    @Test
+    void shutdownClosesSubscriptions() throws InterruptedException {
+        RecordingSink sink = subscribe(null);
+
+        feed.shutdown();
+        assertThat(sink.next()).isEqualTo("close");
+    }
+
+    private static final class RecordingSink implements UserChangeFeed.Sink {
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        volatile boolean failing;
+        volatile CountDownLatch blockOnChange;
+        volatile String lastId;
+
+        @Override
+        public void change(String id, UserChange change) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            lastId = id;
+            events.add("change " + change.seq() + " " + change.type() + " " + change.id());
+            CountDownLatch latch = blockOnChange;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void resync(String id, UserChangeResync resync) {
+            lastId = id;
+            events.add("resync " + resync.reason() + " " + resync.seq());
+        }
+
+        @Override
+        public void heartbeat() throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            events.add("heartbeat");
+        }
+
+        @Override
+        public void close() {
+            events.add("close");
+        }
+
+        String next() throws InterruptedException {
+            String event = events.poll(5, TimeUnit.SECONDS);
+            assertThat(event).as("event").isNotNull();
+            return event;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package net.elpuig.springbootrestfulwebservicebasics.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.elpuig.springbootrestfulwebservicebasics.model.User;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserJournal;
+import net.elpuig.springbootrestfulwebservicebasics.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Repositori en memòria amb els 3 usuaris d'exemple. El pool de hash té 1 fil i poques iteracions;
+// per simular-lo saturat s'atura, i llavors hash() i verify() llancen PasswordHashingBusyException
+class UserServiceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final UserRepository repository = new UserRepository(new UserJournal(false, "unused", false, 0, 0), "heap", false, false);
+    private final PasswordHasher hasher = new PasswordHasher(1_000, 1, 0, 1, registry);
+    private final UserChangeFeed feed = new UserChangeFeed(repository, registry, 4, 1, 1);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final UserService service = new UserService(repository, hasher,
+            new UserJsonCache(repository, objectMapper, registry, 1 << 20, 1 << 20), feed, objectMapper, registry);
+
+    @AfterEach
+    void shutdown() {
+        hasher.shutdown();
+        feed.shutdown();
+    }
+
+    private long timed(String method) {
+        return registry.get("users.service").tag("method", method).timer().count();
+    }
+
+    @Test
+    void timesSavesAndPasswordChecks() {
+        User saved = service.saveUser(new User(4L, "user4@exemple.com", "User Four", "secret")).join();
+        assertThat(saved.password()).startsWith("pbkdf2$");
+        assertThat(service.verifyPassword(4L, "secret").orElseThrow().join()).isTrue();
+
+        assertThat(timed("saveUser")).isEqualTo(1);
+        assertThat(timed("verifyPassword")).isEqualTo(1);
+    }
+
+    @Test
+    void timesRejectedSavesAndPasswordChecks() {
+        hasher.shutdown();
+
+        assertThatThrownBy(() -> service.saveUser(new User(4L, "user4@exemple.com", "User Four", "secret")))
+                .isInstanceOf(PasswordHashingBusyException.class);
+        assertThatThrownBy(() -> service.verifyPassword(1L, "password1")).isInstanceOf(PasswordHashingBusyException.class);
+
+        assertThat(timed("saveUser")).isEqualTo(1);
+        assertThat(timed("verifyPassword")).isEqualTo(1);
+        assertThat(repository.findById(4L)).isEmpty();
+    }
+
+    @Test
+    void timesPasswordChecksOfMissingUsers() {
+        assertThat(service.verifyPassword(99L, "secret")).isEmpty();
+
+        assertThat(timed("verifyPassword")).isEqualTo(1);
+    }
+}